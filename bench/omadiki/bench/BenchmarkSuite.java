@@ -0,0 +1,38 @@
+package omadiki.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of {@code bench/} with the allocation profiler
+ * ({@code -prof gc}) always on, so every result comes with its bytes allocated per
+ * operation next to its time.
+ * <p>
+ * The arguments are the usual JMH command line: a regular expression selects the
+ * benchmarks (all of them by default), and {@code -p dictionary=...} replaces the
+ * default dictionaries, for example.
+ */
+public final class BenchmarkSuite {
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private BenchmarkSuite() {
+    }
+
+    /**
+     * Runs the benchmarks.
+     *
+     * @param args JMH command line options.
+     * @throws RunnerException            If a benchmark fails.
+     * @throws CommandLineOptionException If the options cannot be parsed.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        new Runner(new OptionsBuilder().parent(options).addProfiler(GCProfiler.class).build()).run();
+    }
+}
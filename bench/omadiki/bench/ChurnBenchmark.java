@@ -0,0 +1,87 @@
+package omadiki.bench;
+
+import omadiki.robin.CompressedTrie;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Shows how the memory of a {@link CompressedTrie} behaves under churn: every round
+ * deletes a fifth of the words and inserts as many new ones, so the number of words
+ * stays the same while the words themselves keep changing.
+ * <p>
+ * This is not a JMH benchmark, as it measures memory and not time: it prints, after
+ * every round, the heap in use after a garbage collection and the estimate of
+ * {@code getTotalMemory}. With real deletion both stay flat.
+ */
+public final class ChurnBenchmark {
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private ChurnBenchmark() {
+    }
+
+    /**
+     * Runs the churn rounds.
+     *
+     * @param args The dictionary file and, optionally, the number of rounds (default 20).
+     * @throws IOException If the dictionary cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        SplittableRandom random = new SplittableRandom(42);
+
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(args[0]))) {
+            String w = line.trim().toLowerCase();
+            if (!w.isEmpty()) words.add(w);
+        }
+        CompressedTrie trie = new CompressedTrie();
+        for (String w : words) {
+            trie.insert(w);
+        }
+
+        System.out.println("round\theap MB\testimate MB");
+        for (int round = 0; round <= rounds; round++) {
+            if (round > 0) {
+                int changes = words.size() / 5;
+                for (int i = 0; i < changes; i++) { // Replace a random word by a new one
+                    int victim = random.nextInt(words.size());
+                    trie.delete(words.get(victim));
+                    String w = randomWord(random);
+                    trie.insert(w);
+                    words.set(victim, w);
+                }
+            }
+            System.out.printf("%d\t%.1f\t%.1f%n", round, usedHeap() / 1e6, trie.getTotalMemory(trie.root) / 1e6);
+        }
+    }
+
+    /**
+     * @param random The random generator.
+     * @return A word of 4 to 12 random letters.
+     */
+    private static String randomWord(SplittableRandom random) {
+        char[] w = new char[4 + random.nextInt(9)];
+        for (int i = 0; i < w.length; i++) {
+            w[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(w);
+    }
+
+    /**
+     * @return The bytes of heap in use after collecting the garbage.
+     */
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,106 @@
+package omadiki.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * The dictionaries the benchmarks are run on, named by a {@code @Param} value: either
+ * a word file, or {@code generated:<n>} for {@code n} random words that follow the
+ * statistics of {@code files/test/bigDict.txt}, as {@code DictionaryMaker} generates them:
+ * the word lengths and the frequency of every letter at every position. The generator
+ * is seeded, so a size always gives the same words.
+ */
+public final class Dictionaries {
+    /** The word list the generated dictionaries imitate. */
+    private static final String SOURCE = "files/test/bigDict.txt";
+    /** Longer words of the source are ignored, as {@code DictionaryMaker} does. */
+    private static final int MAX_WORD_LENGTH = 45;
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private Dictionaries() {
+    }
+
+    /**
+     * Loads or generates a dictionary.
+     *
+     * @param name A word file, or {@code generated:<n>}.
+     * @return The words, lowercase and made of the letters 'a'..'z' only, since the
+     * array {@code Trie} has no room for other characters.
+     * @throws IOException If a file cannot be read.
+     */
+    public static String[] load(String name) throws IOException {
+        if (name.startsWith("generated:")) {
+            return generate(Integer.parseInt(name.substring(10)));
+        }
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(name))) {
+            String w = line.trim().toLowerCase();
+            if (!w.isEmpty() && w.chars().allMatch(c -> c >= 'a' && c <= 'z')) {
+                words.add(w);
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    /**
+     * Generates words with the length distribution and the per-position letter
+     * frequencies of the source word list.
+     *
+     * @param n The number of words.
+     * @return The words; there may be duplicates.
+     * @throws IOException If the source cannot be read.
+     */
+    private static String[] generate(int n) throws IOException {
+        long[] lengths = new long[MAX_WORD_LENGTH + 1];   // lengths[l]: the words of length l, summed up to l
+        long[][] letters = new long[MAX_WORD_LENGTH][27]; // letters[p][c + 1]: letter c at position p, summed up to c
+        for (String w : load(SOURCE)) {
+            if (w.length() > MAX_WORD_LENGTH) continue;
+            lengths[w.length()]++;
+            for (int p = 0; p < w.length(); p++) {
+                letters[p][w.charAt(p) - 'a' + 1]++;
+            }
+        }
+        for (int l = 1; l < lengths.length; l++) {
+            lengths[l] += lengths[l - 1];
+        }
+        for (long[] counts : letters) {
+            for (int c = 1; c < counts.length; c++) {
+                counts[c] += counts[c - 1];
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        String[] words = new String[n];
+        char[] w = new char[MAX_WORD_LENGTH];
+        for (int i = 0; i < n; i++) {
+            int length = upperBound(lengths, random.nextLong(lengths[MAX_WORD_LENGTH]));
+            for (int p = 0; p < length; p++) {
+                w[p] = (char) ('a' + upperBound(letters[p], random.nextLong(letters[p][26])) - 1);
+            }
+            words[i] = new String(w, 0, length);
+        }
+        return words;
+    }
+
+    /**
+     * @param sums  Non-decreasing cumulative counts.
+     * @param value A value below the last count.
+     * @return The first index whose count is above the value.
+     */
+    private static int upperBound(long[] sums, long value) {
+        int lo = 0;
+        int hi = sums.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sums[mid] > value) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+}
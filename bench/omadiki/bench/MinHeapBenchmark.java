@@ -0,0 +1,100 @@
+package omadiki.bench;
+
+import omadiki.DictionaryWord;
+import omadiki.MinHeap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the primitive {@link MinHeap} with the original {@link LegacyMinHeap} on the
+ * work of one {@code getWordsWithPrefix} call: offering every word of a subtree to a
+ * heap of size {@code k} and reading the sorted result.
+ * <p>
+ * The words are kept as {@code char[]}s, as a trie traversal has them in a buffer,
+ * so the cost of building a {@code String} per word is part of what is measured: the
+ * legacy heap needs a {@link DictionaryWord} for every word, the new one only builds
+ * the strings of the words it admits. Importances follow a Zipf distribution, like the
+ * counts that {@code parseTxt} produces from real text. All words are distinct: the
+ * legacy quicksort recurses on the pivot's own position and never ends on two equal
+ * elements, so with duplicates it would only measure a {@code StackOverflowError}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MinHeapBenchmark {
+
+    /** The heap size; -1 keeps every word. */
+    @Param({"10", "1000", "-1"})
+    public int k;
+
+    /** The number of words offered to the heap (at most 26^4, for the distinct suffixes). */
+    @Param({"100000"})
+    public int words;
+
+    /** The characters of every word. */
+    private char[][] chars;
+    /** The importance of every word. */
+    private int[] importance;
+
+    /**
+     * Generates the words and their Zipf-distributed importances.
+     */
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        chars = new char[words][];
+        importance = new int[words];
+        for (int i = 0; i < words; i++) {
+            StringBuilder w = new StringBuilder();
+            for (int j = random.nextInt(6); j > 0; j--) {
+                w.append((char) ('a' + random.nextInt(26)));
+            }
+            for (int n = i, d = 0; d < 4; n /= 26, d++) { // A distinct 4-letter suffix per word: see the class comment
+                w.append((char) ('a' + n % 26));
+            }
+            chars[i] = w.toString().toCharArray();
+            importance[i] = (int) (100000 / Math.pow(1 + random.nextInt(words), 1.1)); // Rank-based Zipf
+        }
+    }
+
+    /**
+     * @return The sorted top-k of the original heap.
+     */
+    @Benchmark
+    public DictionaryWord[] legacy() {
+        LegacyMinHeap heap = new LegacyMinHeap(k);
+        for (int i = 0; i < words; i++) {
+            heap.insert(new DictionaryWord(new String(chars[i]), importance[i]));
+        }
+        return heap.getSorted();
+    }
+
+    /**
+     * @return The sorted top-k of the primitive heap.
+     */
+    @Benchmark
+    public DictionaryWord[] primitive() {
+        MinHeap heap = new MinHeap(k);
+        for (int i = 0; i < words; i++) {
+            if (heap.admits(importance[i])) {
+                heap.insert(new String(chars[i]), importance[i]);
+            }
+        }
+        return heap.getSorted();
+    }
+}
@@ -0,0 +1,262 @@
+package omadiki.bench;
+
+import omadiki.robin.CompressedTrie;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the three tries on the operations they all have: building the whole
+ * dictionary with {@code insert}, and {@code search} for words that are in it and for
+ * words that are not ({@code files/missing.txt}).
+ * <p>
+ * The array {@code Trie} is in the default package, which named packages cannot
+ * import, so it is reached through method handles; they are constants, so the JIT
+ * compiles them to plain calls. Each implementation runs in a fork of its own, so the
+ * calls through {@code Subject} stay monomorphic. The searches of one invocation are
+ * all the words of the dictionary, shuffled, or all the missing words. The
+ * {@code omadiki.robin.CompressedTrie} hits also increase the importance counters, as
+ * they do when a text is read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieBenchmark {
+
+    /** The trie: {@code trie} (array), {@code list} (linked list) or {@code robin} (adaptive tables). */
+    @Param({"trie", "list", "robin"})
+    public String implementation;
+
+    /** The dictionary, see {@link Dictionaries#load(String)}. */
+    @Param({"files/test/bigDict.txt", "generated:10000", "generated:100000"})
+    public String dictionary;
+
+    /** The words not in the dictionary. */
+    @Param({"files/missing.txt"})
+    public String missing;
+
+    /**
+     * The operations common to the three tries.
+     */
+    private interface Subject {
+        /**
+         * @param word The word to insert.
+         */
+        void insert(String word);
+
+        /**
+         * @param word The word to search for.
+         * @return Whether it is in the trie.
+         */
+        boolean search(String word);
+    }
+
+    /** {@code new Trie()}, returning an {@code Object}. */
+    private static final MethodHandle TRIE_NEW;
+    /** {@code Trie.insert(String)} on an {@code Object}. */
+    private static final MethodHandle TRIE_INSERT;
+    /** {@code Trie.search(String)} on an {@code Object}. */
+    private static final MethodHandle TRIE_SEARCH;
+
+    static {
+        try {
+            Class<?> trie = Class.forName("Trie");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            TRIE_NEW = lookup.findConstructor(trie, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            TRIE_INSERT = lookup.findVirtual(trie, "insert", MethodType.methodType(void.class, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            TRIE_SEARCH = lookup.findVirtual(trie, "search", MethodType.methodType(boolean.class, String.class))
+                    .asType(MethodType.methodType(boolean.class, Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** The words of the dictionary, in file (or generation) order. */
+    private String[] words;
+    /** The words of the dictionary, shuffled. */
+    private String[] hits;
+    /** The words that are not in the dictionary. */
+    private String[] misses;
+    /** The trie holding the dictionary. */
+    private Subject loaded;
+
+    /**
+     * Loads the words and builds the trie the searches run on.
+     *
+     * @throws IOException If a file cannot be read.
+     */
+    @Setup
+    public void setup() throws IOException {
+        words = Dictionaries.load(dictionary);
+        misses = Dictionaries.load(missing);
+        hits = words.clone();
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = hits.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            String t = hits[i];
+            hits[i] = hits[j];
+            hits[j] = t;
+        }
+        loaded = build();
+    }
+
+    /**
+     * @return A new, empty trie of the benchmarked implementation.
+     */
+    private Subject create() {
+        switch (implementation) {
+            case "trie": {
+                Object trie = newTrie();
+                return new Subject() {
+                    @Override
+                    public void insert(String word) {
+                        trieInsert(trie, word);
+                    }
+
+                    @Override
+                    public boolean search(String word) {
+                        return trieSearch(trie, word);
+                    }
+                };
+            }
+            case "list": {
+                omadiki.list_trie.CompressedTrie trie = new omadiki.list_trie.CompressedTrie();
+                return new Subject() {
+                    @Override
+                    public void insert(String word) {
+                        trie.insert(word);
+                    }
+
+                    @Override
+                    public boolean search(String word) {
+                        return trie.search(word);
+                    }
+                };
+            }
+            case "robin": {
+                CompressedTrie trie = new CompressedTrie();
+                return new Subject() {
+                    @Override
+                    public void insert(String word) {
+                        trie.insert(word);
+                    }
+
+                    @Override
+                    public boolean search(String word) {
+                        return trie.search(word);
+                    }
+                };
+            }
+            default:
+                throw new IllegalArgumentException("Unknown implementation: " + implementation);
+        }
+    }
+
+    /**
+     * @return A new array {@code Trie}.
+     */
+    private static Object newTrie() {
+        try {
+            return TRIE_NEW.invokeExact();
+        } catch (Throwable e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * @param trie An array {@code Trie}.
+     * @param word The word to insert.
+     */
+    private static void trieInsert(Object trie, String word) {
+        try {
+            TRIE_INSERT.invokeExact(trie, word);
+        } catch (Throwable e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * @param trie An array {@code Trie}.
+     * @param word The word to search for.
+     * @return Whether it is in the trie.
+     */
+    private static boolean trieSearch(Object trie, String word) {
+        try {
+            return (boolean) TRIE_SEARCH.invokeExact(trie, word);
+        } catch (Throwable e) {
+            throw unchecked(e);
+        }
+    }
+
+    /**
+     * @param e What a method handle threw.
+     * @return The same, if it is unchecked; {@code Trie} declares no checked exceptions.
+     */
+    private static RuntimeException unchecked(Throwable e) {
+        if (e instanceof Error) throw (Error) e;
+        return e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+    }
+
+    /**
+     * @return A new trie holding every word of the dictionary, inserted one by one.
+     */
+    private Subject build() {
+        Subject trie = create();
+        for (String w : words) {
+            trie.insert(w);
+        }
+        return trie;
+    }
+
+    /**
+     * @return The trie, so that the insertions are not optimized away.
+     */
+    @Benchmark
+    public Object insert() {
+        return build();
+    }
+
+    /**
+     * @return The number of words found, so that no search is optimized away.
+     */
+    @Benchmark
+    public int searchHit() {
+        int found = 0;
+        for (String w : hits) {
+            if (loaded.search(w)) found++;
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of words found, so that no search is optimized away.
+     */
+    @Benchmark
+    public int searchMiss() {
+        int found = 0;
+        for (String w : misses) {
+            if (loaded.search(w)) found++;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,144 @@
+package omadiki.robin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link CompressedTrie#searchAll(CharSequence[])} with one
+ * {@link CompressedTrie#search(CharSequence)} per word, on the words of a text.
+ * <p>
+ * The text is either a file, tokenized like {@code parseTxt} does, or, for
+ * {@code zipf:<n>}, {@code n} words generated in the setup: dictionary words drawn with
+ * a Zipf distribution, as the words of a real text are, and one word in ten that is not
+ * in the dictionary. The words are cut into batches of {@code batch} words; one
+ * invocation searches all of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchLookupBenchmark {
+
+    /** The dictionary file. */
+    @Param({"files/test/bigDict.txt"})
+    public String dictionary;
+
+    /** The text file, or {@code zipf:<n>} for {@code n} generated words. */
+    @Param({"files/test/bigText.txt", "zipf:1000000"})
+    public String text;
+
+    /** The number of words of a batch. */
+    @Param({"1000", "10000"})
+    public int batch;
+
+    /** The trie. */
+    private CompressedTrie trie;
+    /** The words of the text, by batch. */
+    private CharSequence[][] batches;
+
+    /**
+     * Loads the dictionary and reads or generates the text.
+     *
+     * @throws IOException If a file cannot be read.
+     */
+    @Setup
+    public void setup() throws IOException {
+        trie = BulkLoader.load(Path.of(dictionary));
+        List<String> words = new ArrayList<>();
+        if (text.startsWith("zipf:")) {
+            words = zipf(Integer.parseInt(text.substring(5)));
+        } else {
+            List<String> tokens = words;
+            new Tokenizer().tokenize(Path.of(text), w -> tokens.add(w.toString()));
+        }
+
+        batches = new CharSequence[(words.size() + batch - 1) / batch][];
+        for (int i = 0; i < batches.length; i++) {
+            batches[i] = words.subList(i * batch, Math.min(words.size(), (i + 1) * batch)).toArray(new CharSequence[0]);
+        }
+    }
+
+    /**
+     * Generates a text from the dictionary.
+     *
+     * @param n The number of words.
+     * @return The words.
+     */
+    private List<String> zipf(int n) {
+        List<String> dict = new ArrayList<>();
+        CompletionCursor cursor = trie.completions("");
+        while (cursor.advance()) {
+            dict.add(cursor.token());
+        }
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = dict.size() - 1; i > 0; i--) { // The ranks must not follow the alphabet
+            int j = random.nextInt(i + 1);
+            String t = dict.get(i);
+            dict.set(i, dict.get(j));
+            dict.set(j, t);
+        }
+
+        // Rank r has a probability proportional to 1/r: invert the cumulative sums
+        double[] cumulative = new double[dict.size()];
+        double sum = 0;
+        for (int r = 0; r < cumulative.length; r++) {
+            sum += 1.0 / (r + 1);
+            cumulative[r] = sum;
+        }
+        List<String> words = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (random.nextInt(10) == 0) {
+                words.add(dict.get(random.nextInt(dict.size())) + "xq"); // Not in the dictionary
+                continue;
+            }
+            int r = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            words.add(dict.get(r < 0 ? Math.min(-r - 1, dict.size() - 1) : r));
+        }
+        return words;
+    }
+
+    /**
+     * @return The number of hits, so that no search is optimized away.
+     */
+    @Benchmark
+    public int perWord() {
+        int hits = 0;
+        for (CharSequence[] b : batches) {
+            for (CharSequence w : b) {
+                if (trie.search(w)) hits++;
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * @return The number of hits, so that no search is optimized away.
+     */
+    @Benchmark
+    public int batched() {
+        int hits = 0;
+        for (CharSequence[] b : batches) {
+            hits += trie.searchAll(b).cardinality();
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,175 @@
+package omadiki.robin;
+
+import omadiki.MinHeap;
+import omadiki.bench.Dictionaries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the operations that only {@link CompressedTrie} has among the three tries
+ * ({@code TrieBenchmark} covers the common ones): {@code getWordsWithPrefix} for several
+ * prefix lengths and values of {@code k}, {@code predictNextLetter} and {@code delete}.
+ * <p>
+ * The words get Zipf-distributed importances, as after reading a real text, and the
+ * completion cache has the size {@code Main} gives it, so {@code k = 1} and {@code k = 10}
+ * are answered from the cache and {@code k = 100} by the best-first search. The prefixes
+ * of one invocation are the distinct prefixes of a sample of 1000 words; deleting
+ * removes every word of the dictionary from a fresh copy of the trie.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressedTrieBenchmark {
+
+    /** The dictionary, see {@link Dictionaries#load(String)}. */
+    @Param({"files/test/bigDict.txt", "generated:10000", "generated:100000"})
+    public String dictionary;
+
+    /** The completion cache size, as {@code Main} sets it by default. */
+    private static final int CACHE = 10;
+
+    /** The words of the dictionary. */
+    private String[] words;
+    /** The trie holding the dictionary. */
+    private CompressedTrie trie;
+
+    /**
+     * The prefixes of the queries. It is a state of its own, like {@link TopK}, so that
+     * {@code delete} does not run for each prefix length.
+     */
+    @State(Scope.Benchmark)
+    public static class Prefixes {
+        /** The length of the prefixes. */
+        @Param({"1", "2", "3"})
+        public int prefixLength;
+
+        /** The prefixes. */
+        String[] prefixes;
+
+        /**
+         * Picks the distinct prefixes of a sample of the words.
+         *
+         * @param outer The benchmark state with the words.
+         */
+        @Setup
+        public void setup(CompressedTrieBenchmark outer) {
+            SplittableRandom random = new SplittableRandom(7);
+            Set<String> distinct = new LinkedHashSet<>();
+            for (int i = 0; i < 1000; i++) {
+                String w = outer.words[random.nextInt(outer.words.length)];
+                distinct.add(w.substring(0, Math.min(prefixLength, w.length())));
+            }
+            prefixes = distinct.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * The number of words returned by {@code getWordsWithPrefix}. It is a state of its
+     * own so that {@code predictNextLetter} does not run for each value.
+     */
+    @State(Scope.Benchmark)
+    public static class TopK {
+        /** The number of words returned. */
+        @Param({"1", "10", "100"})
+        public int k;
+    }
+
+    /**
+     * A fresh copy of the trie for every invocation of {@code delete}, which empties it.
+     */
+    @State(Scope.Thread)
+    public static class Copy {
+        /** The trie to empty. */
+        CompressedTrie trie;
+
+        /**
+         * Builds the copy; an invocation deletes a whole dictionary, so it is long
+         * enough for a setup per invocation not to distort it.
+         *
+         * @param outer The benchmark state with the words.
+         */
+        @Setup(Level.Invocation)
+        public void setup(CompressedTrieBenchmark outer) {
+            trie = BulkLoader.build(outer.words.clone());
+        }
+    }
+
+    /**
+     * Builds the trie and gives the words their importances.
+     *
+     * @throws IOException If a file cannot be read.
+     */
+    @Setup
+    public void setup() throws IOException {
+        words = Dictionaries.load(dictionary);
+        trie = BulkLoader.build(words.clone());
+
+        SplittableRandom random = new SplittableRandom(42);
+        CompletionCursor cursor = trie.completions("");
+        while (cursor.advance()) {
+            trie.findWord(cursor.token()).importance = (int) (100000 / Math.pow(1 + random.nextInt(words.length), 1.1));
+        }
+        trie.refreshAggregates();
+        trie.setCompletionCacheSize(CACHE);
+    }
+
+    /**
+     * @param prefixes The prefixes.
+     * @param top      The number of words per prefix.
+     * @return The number of words returned, so that no query is optimized away.
+     */
+    @Benchmark
+    public int getWordsWithPrefix(Prefixes prefixes, TopK top) {
+        int n = 0;
+        for (String p : prefixes.prefixes) {
+            MinHeap heap = trie.getWordsWithPrefix(p, top.k);
+            n += heap.size();
+        }
+        return n;
+    }
+
+    /**
+     * @param prefixes The prefixes.
+     * @return The predicted letters, summed, so that no prediction is optimized away.
+     */
+    @Benchmark
+    public int predictNextLetter(Prefixes prefixes) {
+        int sum = 0;
+        for (String p : prefixes.prefixes) {
+            sum += trie.predictNextLetter(p);
+        }
+        return sum;
+    }
+
+    /**
+     * @param copy The trie to empty.
+     * @return The number of words deleted.
+     */
+    @Benchmark
+    public int delete(Copy copy) {
+        int deleted = 0;
+        for (String w : words) {
+            if (copy.trie.delete(w)) deleted++;
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,179 @@
+package omadiki.robin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the adaptive {@link ChildTable}s of the trie nodes with a
+ * {@link RobinHoodHashing} per node, as every node used to have, and with the original
+ * {@link LegacyRobinHoodHashing}, on the edge lookups of a dictionary.
+ * <p>
+ * The dictionary is loaded into a {@link CompressedTrie}, and every node gets a hash
+ * table and a legacy table with the same edges. The lookups are the (node, character) pairs met on the
+ * path of every dictionary word, so a deep word contributes one lookup per level; they
+ * are shuffled, as the words of a text do not come in dictionary order. One invocation
+ * performs all of them, so the lookups per second are the lookup count (printed by the
+ * setup) divided by the reported time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EdgeLookupBenchmark {
+
+    /** The dictionary file. */
+    @Param({"files/test/bigDict.txt"})
+    public String dictionary;
+
+    /**
+     * Whether the lookups look for a character that has no edge, as when a text word
+     * leaves the dictionary, instead of the character of the word.
+     */
+    @Param({"false", "true"})
+    public boolean misses;
+
+    /** The table of every node. */
+    private ChildTable[] adaptive;
+    /** The hash table of every node, with the same edges. */
+    private RobinHoodHashing[] packed;
+    /** The legacy table of every node, with the same edges. */
+    private LegacyRobinHoodHashing[] legacy;
+    /** The node of every lookup. */
+    private int[] nodes;
+    /** The character of every lookup. */
+    private char[] keys;
+
+    /**
+     * Loads the dictionary and collects the lookups.
+     *
+     * @throws IOException If the dictionary cannot be read.
+     */
+    @Setup
+    public void setup() throws IOException {
+        CompressedTrie trie = BulkLoader.load(Path.of(dictionary));
+
+        // Number the nodes and give each one a hashed and a legacy copy of its table
+        IdentityHashMap<CompressedTrie.CompressedTrieNode, Integer> ids = new IdentityHashMap<>();
+        List<ChildTable> tables = new ArrayList<>();
+        List<RobinHoodHashing> hashed = new ArrayList<>();
+        List<LegacyRobinHoodHashing> copies = new ArrayList<>();
+        List<CompressedTrie.CompressedTrieNode> stack = new ArrayList<>();
+        stack.add(trie.root);
+        while (!stack.isEmpty()) {
+            CompressedTrie.CompressedTrieNode node = stack.remove(stack.size() - 1);
+            ids.put(node, tables.size());
+            tables.add(node.children);
+            RobinHoodHashing hash = new RobinHoodHashing(node.children.size());
+            LegacyRobinHoodHashing copy = new LegacyRobinHoodHashing(node.children.size());
+            for (int i = 0; i < node.children.slots(); i++) {
+                ChildTable.Edge e = node.children.slot(i);
+                if (e != null) {
+                    hash.insert(e);
+                    copy.insert(e);
+                    stack.add(e.child);
+                }
+            }
+            hashed.add(hash);
+            copies.add(copy);
+        }
+        adaptive = tables.toArray(new ChildTable[0]);
+        packed = hashed.toArray(new RobinHoodHashing[0]);
+        legacy = copies.toArray(new LegacyRobinHoodHashing[0]);
+
+        // The lookups on the path of every word
+        List<int[]> lookups = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(dictionary))) {
+            String word = line.trim().toLowerCase();
+            CompressedTrie.CompressedTrieNode node = trie.root;
+            for (int pos = 0; pos < word.length(); ) {
+                ChildTable.Edge e = node.children.get(word.charAt(pos));
+                if (e == null) break;
+                lookups.add(new int[]{ids.get(node), misses ? absent(node) : word.charAt(pos)});
+                pos += e.length;
+                node = e.child;
+            }
+        }
+
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = lookups.size() - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int[] t = lookups.get(i);
+            lookups.set(i, lookups.get(j));
+            lookups.set(j, t);
+        }
+        nodes = new int[lookups.size()];
+        keys = new char[lookups.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = lookups.get(i)[0];
+            keys[i] = (char) lookups.get(i)[1];
+        }
+        System.out.println(nodes.length + " lookups over " + adaptive.length + " tables");
+    }
+
+    /**
+     * @param node A node.
+     * @return The first letter (after 'a') without an edge at the node, or 'a' if it has all of them.
+     */
+    private static char absent(CompressedTrie.CompressedTrieNode node) {
+        for (char c = 'b'; c <= 'z'; c++) {
+            if (node.children.get(c) == null) return c;
+        }
+        return 'a';
+    }
+
+    /**
+     * @return The number of edges found, so that no lookup is optimized away.
+     */
+    @Benchmark
+    public int adaptive() {
+        int found = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (adaptive[nodes[i]].get(keys[i]) != null) found++;
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of edges found, so that no lookup is optimized away.
+     */
+    @Benchmark
+    public int packed() {
+        int found = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (packed[nodes[i]].get(keys[i]) != null) found++;
+        }
+        return found;
+    }
+
+    /**
+     * @return The number of edges found, so that no lookup is optimized away.
+     */
+    @Benchmark
+    public int legacy() {
+        int found = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            if (legacy[nodes[i]].search(keys[i]) != null) found++;
+        }
+        return found;
+    }
+}
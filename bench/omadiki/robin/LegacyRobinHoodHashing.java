@@ -0,0 +1,182 @@
+package omadiki.robin;
+
+/**
+ * The original {@code RobinHoodHashing}, kept as the baseline of the edge lookup
+ * benchmark. It stores the same {@link ChildTable.Edge}s, but every probe loads the
+ * edge of the slot to compare its first character. It is unchanged, except that the
+ * edges no longer have a deletion flag to check.
+ * <p>
+ * Implements a Robin Hood Hashing open addressing hash map.
+ * This class is designed to store {@code Edge} objects (which represent trie
+ * path segments) and uses Robin Hood insertion to minimize variance in probe lengths.
+ * <p>
+ * The hashing mechanism assumes labels start with lowercase English letters
+ * and uses the first character for hash calculation.
+ */
+public class LegacyRobinHoodHashing {
+
+    /** A sequence of prime numbers used for resizing the hash table (rehash operation). */
+    private static int[] PRIMES = {3, 7, 11, 17, 23, 29};
+
+    /** The array representing the hash table. */
+    ChildTable.Edge[] table;
+    /** The current capacity of the hash table. */
+    int capacity;
+    /** The number of elements currently stored in the hash table. */
+    int size;
+    /** The maximum probe length observed (distance from home slot). */
+    int maxProbeLength;
+
+    /**
+     * Constructs a new LegacyRobinHoodHashing table with a small initial capacity (3).
+     */
+    public LegacyRobinHoodHashing() {
+        this(0);
+    }
+
+    /**
+     * Constructs a new LegacyRobinHoodHashing table that can hold {@code expected} edges
+     * without ever needing a rehash.
+     *
+     * @param expected The number of edges that will be inserted.
+     */
+    public LegacyRobinHoodHashing(int expected) {
+        int i = 0;
+        // Smallest prime whose load threshold stays above the expected size
+        while (i < PRIMES.length - 1 && expected >= (int) (PRIMES[i] * 0.9f)) {
+            i++;
+        }
+        this.capacity = PRIMES[i];
+        table = new ChildTable.Edge[this.capacity];
+        size = 0;
+        maxProbeLength = 0;
+    }
+
+    /**
+     * Calculates the hash for a given edge based on the first character of its label.
+     * Assumes the first character is a lowercase English letter ('a' to 'z').
+     *
+     * @param c The first character of an edge label.
+     * @return The initial hash table index.
+     */
+    private int hash(char c) {
+        return Math.floorMod(c - 'a', capacity);
+    }
+
+    /**
+     * Retrieves an edge whose label starts with the same character as the input string.
+     *
+     * @param s The string whose first character is used for searching.
+     * @return The matching {@code Edge}, or {@code null} if not found.
+     */
+    ChildTable.Edge search(String s) {
+        if (s.isEmpty()) {
+            return null;
+        }
+        return search(s.charAt(0));
+    }
+
+    /**
+     * Retrieves the live edge whose label starts with the given character.
+     * Searches starting from the home index and continues up to {@code maxProbeLength}.
+     *
+     * @param c The first character of the wanted edge label.
+     * @return The matching {@code Edge}, or {@code null} if not found.
+     */
+    ChildTable.Edge search(char c) {
+        int index = hash(c);
+        // Linear probing from the home slot
+        for (int probe = 0; probe <= maxProbeLength; probe++) {
+            ChildTable.Edge e = table[index];
+            if (e == null) return null;
+            if (e.first == c) return e;
+            index = (index + 1) % capacity;
+        }
+
+        return null;
+    }
+
+    /**
+     * Inserts an edge into the hash table using the Robin Hood Hashing strategy.
+     * This strategy ensures that if the incoming element has a longer probe length
+     * than the element currently at the slot, the two are swapped.
+     *
+     * @param edge The edge to insert.
+     */
+    void insert(ChildTable.Edge edge) {
+        if (edge == null) {
+            return;
+        }
+
+        int index = hash(edge.first);
+        ChildTable.Edge cur = table[index];
+        int curProbeLength = cur == null ? 0 : circularDiff(hash(cur.first), index);
+        int probeLength = 0;
+        while (cur != null) {
+            // Robin Hood Check
+            if (probeLength > curProbeLength) {
+                if (probeLength > maxProbeLength) {
+                    maxProbeLength = probeLength;
+                }
+                table[index] = edge;
+                edge = cur;
+                probeLength = curProbeLength;
+            }
+
+            index = (index+1) % capacity;
+            probeLength++;
+            cur = table[index];
+            curProbeLength = cur == null ? 0 : circularDiff(hash(cur.first), index);
+        }
+
+        // Slot found (cur == null), place the current edge (which may be the original or a displaced one)
+        if (probeLength > maxProbeLength) {
+            maxProbeLength = probeLength;
+        }
+
+        table[index] = edge;
+        size++;
+
+        // Trigger rehash if load factor exceeds 90%
+        if (size >= (int) (capacity * 0.9f) && size < 26) {
+            rehash();
+        }
+    }
+
+    /**
+     * Calculates the circular difference between two indices, representing the
+     * probe length (distance from the home index) in a circular array.
+     *
+     * @param a The home index (starting point).
+     * @param b The current index (ending point).
+     * @return The circular distance from {@code a} to {@code b}.
+     */
+    private int circularDiff(int a, int b) {
+        return a <= b ? b-a : capacity-a+b;
+    }
+
+    /**
+     * Increases the capacity of the hash table to the next prime number in the sequence
+     * and re-inserts all existing elements into the new, larger table.
+     */
+    private void rehash() {
+        int i;
+        // Find the current capacity in the PRIMES array
+        for (i = 0; i <= PRIMES.length; i++) {
+            if (PRIMES[i] == capacity) {
+                break;
+            }
+        }
+        int oldCapacity = capacity;
+        capacity = PRIMES[i+1];
+
+        ChildTable.Edge[] oldTable = table;
+        table = new ChildTable.Edge[capacity];
+        maxProbeLength = 0;
+        size = 0;
+
+        for (int j = 0; j < oldCapacity; j++) {
+            insert(oldTable[j]);
+        }
+    }
+}
@@ -1,3 +1,4 @@
+import omadiki.HeapMeter;
 import omadiki.robin.CompressedTrie;
 
 import java.io.BufferedReader;
@@ -5,23 +6,100 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Random;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Generates synthetic dictionaries based on statistical distributions
  * from a source word list and compares memory usage of Trie vs CompressedTrie.
+ * <p>
+ * By default the memory is the {@code getTotalMemory} estimate over 60 dictionaries
+ * per size, generated in parallel on a fork/join pool and printed as CSV with its mean
+ * and variance. Every dictionary has its own {@link SplittableRandom}, split from one
+ * seeded generator in a fixed order, so a run is reproduced exactly by its seed whatever
+ * the number of threads. The sizes run one after the other, and only as many
+ * dictionaries of a size are built at once as the maximum heap holds, by the estimate
+ * of {@link #BYTES_PER_LETTER}; the larger sizes then use fewer threads. With
+ * {@code -measure}, one dictionary per size is also walked by the {@link HeapMeter},
+ * which reports the real heap footprint, with object headers and alignment, next to the
+ * estimate and split into components; the JVM must then run the meter's agent.
  */
 public class DictionaryMaker {
-    /** Random generator */
-    private static final Random rnd = new Random();
-
     /** Trial sizes — number of words to generate per experiment */
     private static final int TRIALS[] = {5000, 10000, 25000, 50000, 75000, 100000, 150000, 200000, 250000, 500000, 750000, 1000000};
 
     private static final int MAX_WORD_LENGTH = 45;
 
+    /** The number of dictionaries generated per trial size. */
+    private static final int REPETITIONS = 60;
+
+    /** The components of a {@code Trie}: the nodes and their child arrays. */
+    private static final Map<String, String> TRIE_COMPONENTS = Map.of(
+            "Trie$Node", "nodes",
+            "Trie$Node#children", "tables");
+
+    /**
+     * The components of a {@code CompressedTrie}: the nodes, their child tables (with
+     * their key and edge arrays), the edges, the label arena and the completion caches.
+     */
+    private static final Map<String, String> COMPRESSED_COMPONENTS = Map.of(
+            "omadiki.robin.CompressedTrie$CompressedTrieNode", "nodes",
+            "omadiki.robin.ChildTable", "tables",
+            "omadiki.robin.ChildTable$Edge", "edges",
+            "omadiki.robin.LabelArena", "labels",
+            "omadiki.robin.CompressedTrie$CompressedTrieNode#top", "heaps",
+            "omadiki.robin.CompressedTrie$CompressedTrieNode#word", "heaps");
+
+    /**
+     * The heap a generated word takes in the two tries while they are built, per letter
+     * and per word: {@code -measure} gives about 130 B per letter for the {@code Trie}
+     * and at most 250 B per word for the {@code CompressedTrie}, rounded up here for the
+     * garbage of building them.
+     */
+    private static final int BYTES_PER_LETTER = 160;
+    /** See {@link #BYTES_PER_LETTER}. */
+    private static final int BYTES_PER_WORD = 320;
+
+    /** The completion cache size the tries are measured with, as {@code Main} sets it. */
+    private static final int MEASURED_CACHE = 10;
+
+    /**
+     * Runs the memory comparison.
+     *
+     * @param args The source word list, then the options: {@code -fixed <length>} for
+     *             words of a fixed length instead of Gaussian lengths, {@code -seed <n>}
+     *             (default 42), {@code -threads <n>} (default: one per processor, fewer
+     *             for the sizes the heap cannot hold that many times) and
+     *             {@code -measure} to measure the real heap footprint instead.
+     */
     public static void main(String[] args) {
+        int fixedWordLength = -1;
+        long seed = 42;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean measure = false;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("-measure")) {
+                measure = true;
+            } else if (i + 1 < args.length && args[i].equals("-fixed")) {
+                fixedWordLength = Integer.parseInt(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-seed")) {
+                seed = Long.parseLong(args[++i]);
+            } else if (i + 1 < args.length && args[i].equals("-threads")) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                System.err.println("Unknown option: " + args[i]);
+                System.exit(1);
+            }
+        }
+        if (fixedWordLength == 0 || fixedWordLength > MAX_WORD_LENGTH || threads < 1) {
+            System.err.println("The word length must be 1 to " + MAX_WORD_LENGTH + " and the threads at least 1");
+            System.exit(1);
+        }
+
         File wordsFile = new File(args[0]);
         if (!wordsFile.exists()) {
             System.out.println("File " + wordsFile.getAbsolutePath() + " does not exist.");
@@ -57,137 +135,267 @@ public class DictionaryMaker {
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
-        Scanner sc = new Scanner(System.in);
-        System.out.println("1- Generate random Dictionary with fixed size length word");
-        System.out.println("2- Generate random Dictionary with random word length");
-        System.out.print("Enter Option: ");
-        int tog = sc.nextInt(); // type of generation
 
-        int fixedWordLength = -1;
-        if (tog == 1) {
-            System.out.print("Enter word length: ");
-            fixedWordLength = sc.nextInt();
+        AliasTable[] letters = new AliasTable[MAX_WORD_LENGTH];
+        for (int i = 0; i < MAX_WORD_LENGTH; i++) {
+            letters[i] = new AliasTable(letter[i]);
         }
-
-        System.out.println("Trie Memory \t Comp.Trie Memory");
-
-        for (int trials : TRIALS) {
-            long sum_trie = 0;
-            long sum_compressed = 0;
-            CompressedTrie compressedTrie;
-            Trie trie;
-
-            for (int j = 0; j < 60; j++) {
-                compressedTrie = new CompressedTrie();
-                trie = new Trie();
-                if (tog == 1)
-                    random_dictionary_generator_fixed(wordlengths, letter, fixedWordLength, trials, trie, compressedTrie);
-                else
-                    random_dictionary_generator(wordlengths, letter, trials, trie, compressedTrie);
-
-                sum_compressed += compressedTrie.getTotalMemory(compressedTrie.root);
-                sum_trie += trie.getTotalMemory(trie.head);
+        Generator generator = fixedWordLength > 0
+                ? new Generator(letters, fixedWordLength)
+                : new Generator(letters, wordlengths);
+
+        // Every dictionary gets its own generator, split off in a fixed order, so the
+        // results do not depend on the number of threads or on the scheduling
+        SplittableRandom master = new SplittableRandom(seed);
+        if (measure) {
+            HeapMeter meter = null;
+            try {
+                meter = new HeapMeter();
+            } catch (IllegalStateException e) { // Started without -javaagent
+                System.err.println(e.getMessage());
+                System.exit(1);
             }
-
-            double mean_trie = sum_trie / 60d;
-            double mean_compressed = sum_compressed / 60d;
-
-            System.out.println(mean_trie + "\t" + mean_compressed);
+            measure(generator, master, meter);
+            return;
         }
 
-    }
-
-    public static void random_dictionary_generator_fixed(int[] wordlength, int[][] letter, int length, int dictSize, Trie trie, CompressedTrie ctrie) {
-        StringBuilder sb = new StringBuilder();
-        Random rand = new Random();
-
-        for (int i = 0; i < dictSize; i++) {
-
-            for (int k = 0; k < length; k++) {
-                int j;
-                int weightSum = 0;
-                for (j = 0; j < 26; j++) {
-                    weightSum += letter[k][j];
-                }
-
-                int rnd = rand.nextInt(weightSum);
-                for (j = 0; j < 26; j++) {
-                    if (rnd < letter[k][j]) {
-                        break;
+        double bytesPerWord = BYTES_PER_LETTER * generator.meanLength() + BYTES_PER_WORD;
+        long budget = Runtime.getRuntime().maxMemory() / 4 * 3;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            System.out.println("seed,words,repetitions,trie_mean,trie_variance,compressed_mean,compressed_variance");
+            for (int trials : TRIALS) {
+                // Only as many dictionaries of this size as fit in the heap are built at once
+                int inFlight = (int) Math.max(1, Math.min(threads, budget / (trials * bytesPerWord)));
+                double[] trie = new double[REPETITIONS];
+                double[] compressed = new double[REPETITIONS];
+                for (int first = 0; first < REPETITIONS; first += inFlight) {
+                    List<ForkJoinTask<long[]>> batch = new ArrayList<>();
+                    for (int j = first; j < Math.min(first + inFlight, REPETITIONS); j++) {
+                        SplittableRandom random = master.split();
+                        batch.add(pool.submit(() -> {
+                            CompressedTrie compressedTrie = new CompressedTrie();
+                            Trie t = new Trie();
+                            generator.generate(trials, random, t, compressedTrie);
+                            return new long[]{t.getTotalMemory(t.head), compressedTrie.getTotalMemory(compressedTrie.root)};
+                        }));
+                    }
+                    for (int j = 0; j < batch.size(); j++) {
+                        long[] memory = batch.get(j).join();
+                        trie[first + j] = memory[0];
+                        compressed[first + j] = memory[1];
                     }
-                    rnd -= letter[k][j];
                 }
-                sb.append((char) (j + 'a'));
-
+                System.out.println(seed + "," + trials + "," + REPETITIONS
+                        + "," + mean(trie) + "," + variance(trie)
+                        + "," + mean(compressed) + "," + variance(compressed));
             }
-            trie.insert(sb.toString());
-            ctrie.insert(sb.toString());
-            sb = new StringBuilder();
+        } finally {
+            pool.shutdown();
         }
     }
 
-    public static int sampleLengthGaussian(double mu, double sigma, int minLen, int maxLen) {
-        double u1 = rnd.nextDouble();
-        double u2 = rnd.nextDouble();
-        double z = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
-
-        int len = (int) Math.round(mu + sigma * z);
-
-        if (len < minLen) len = minLen;
-        if (len > maxLen) len = maxLen;
+    /**
+     * @param values Some values.
+     * @return Their mean.
+     */
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double v : values) sum += v;
+        return sum / values.length;
+    }
 
-        return len;
+    /**
+     * @param values At least two values.
+     * @return Their sample variance.
+     */
+    private static double variance(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        for (double v : values) sum += (v - mean) * (v - mean);
+        return sum / (values.length - 1);
     }
 
+    /**
+     * Builds one dictionary per trial size and prints, for both tries, the estimate of
+     * {@code getTotalMemory} next to the real footprint, followed by the components of
+     * the footprint. The compressed trie caches {@value #MEASURED_CACHE} completions per
+     * node, as it does when {@code Main} serves it.
+     *
+     * @param generator The dictionary generator.
+     * @param master    The generator every dictionary's random generator is split from.
+     * @param meter     The heap meter.
+     */
+    private static void measure(Generator generator, SplittableRandom master, HeapMeter meter) {
+        System.out.println("Heap layout: " + meter.describe());
+        System.out.println("Words \t Trie estimate \t Trie heap \t Comp.Trie estimate \t Comp.Trie heap");
 
-    public static void random_dictionary_generator(int[] wordlength, int[][] letter, int dictSize, Trie trie, CompressedTrie ctrie) {
-        StringBuilder sb = new StringBuilder();
-        Random rand = new Random();
-        int sum1 = 0;
-        for (int i = 0; i < wordlength.length; i++) {
-            sum1 += wordlength[i];
-        }
-        double sum = 0;
-        for (int i = 0; i < wordlength.length; i++) sum += i * (double) wordlength[i] / sum1;
-        double mean = sum;
-        double sigma = 0;
-        for (int i = 0; i < wordlength.length; i++) {
-            sigma = Math.pow(wordlength[i] - mean, 2);
+        for (int trials : TRIALS) {
+            CompressedTrie compressedTrie = new CompressedTrie();
+            Trie trie = new Trie();
+            generator.generate(trials, master.split(), trie, compressedTrie);
+            compressedTrie.setCompletionCacheSize(MEASURED_CACHE);
+
+            HeapMeter.Footprint trieHeap = meter.measure(trie, TRIE_COMPONENTS);
+            HeapMeter.Footprint compressedHeap = meter.measure(compressedTrie, COMPRESSED_COMPONENTS);
+            System.out.println(trials + "\t" + trie.getTotalMemory(trie.head) + "\t" + trieHeap.bytes()
+                    + "\t" + compressedTrie.getTotalMemory(compressedTrie.root) + "\t" + compressedHeap.bytes());
+            System.out.println("    Trie: " + trieHeap);
+            System.out.println("    Comp.Trie: " + compressedHeap);
         }
-        sigma = sigma / wordlength.length - 1;
+    }
 
-        for (int i = 0; i < dictSize; i++) {
+    /**
+     * Samples letters with given weights in constant time, with Vose's alias method: each
+     * of the 26 columns holds one letter with some probability, and another letter, its
+     * alias, otherwise.
+     */
+    static final class AliasTable {
+        /** The probability that a column gives its own letter. */
+        private final double[] probability = new double[26];
+        /** The letter a column gives otherwise. */
+        private final int[] alias = new int[26];
+
+        /**
+         * @param weights How often every letter occurs; all zero for a uniform choice.
+         */
+        AliasTable(int[] weights) {
+            long total = 0;
+            for (int w : weights) total += w;
+
+            double[] scaled = new double[26];
+            int[] small = new int[26];
+            int[] large = new int[26];
+            int smalls = 0;
+            int larges = 0;
+            for (int i = 0; i < 26; i++) {
+                scaled[i] = total == 0 ? 1 : weights[i] * 26.0 / total;
+                if (scaled[i] < 1) small[smalls++] = i;
+                else large[larges++] = i;
+            }
+            while (smalls > 0 && larges > 0) { // A light column is topped up by a heavy one
+                int s = small[--smalls];
+                int l = large[--larges];
+                probability[s] = scaled[s];
+                alias[s] = l;
+                scaled[l] -= 1 - scaled[s];
+                if (scaled[l] < 1) small[smalls++] = l;
+                else large[larges++] = l;
+            }
+            while (larges > 0) probability[large[--larges]] = 1;
+            while (smalls > 0) probability[small[--smalls]] = 1; // Only rounding errors are left here
+        }
 
-            int length = sampleLengthGaussian(mean, sigma, 1, 45);
+        /**
+         * @param random The random generator.
+         * @return A letter index, 0 for 'a'.
+         */
+        int sample(SplittableRandom random) {
+            int column = random.nextInt(26);
+            return random.nextDouble() < probability[column] ? column : alias[column];
+        }
+    }
 
-            for (int k = 0; k < length; k++) {
+    /**
+     * Generates dictionaries whose letters follow the per-position letter frequencies of
+     * the source words, with either a fixed word length or a Gaussian one. It keeps no
+     * state, so it can serve several threads, each with its own random generator.
+     */
+    static final class Generator {
+        /** The letter sampler of every position. */
+        private final AliasTable[] letters;
+        /** The length of every word; -1 for Gaussian lengths. */
+        private final int length;
+        /** The mean of the Gaussian lengths. */
+        private final double mean;
+        /** The standard deviation of the Gaussian lengths. */
+        private final double sigma;
+
+        /**
+         * A generator of words of a fixed length.
+         *
+         * @param letters The letter sampler of every position.
+         * @param length  The length of the words.
+         */
+        Generator(AliasTable[] letters, int length) {
+            this.letters = letters;
+            this.length = length;
+            this.mean = 0;
+            this.sigma = 0;
+        }
 
-                int kk = Math.min(k, letter.length - 1);  // <-- SAFETY FIX
+        /**
+         * A generator of words of Gaussian lengths, whose parameters come from the
+         * lengths of the source words.
+         *
+         * @param letters     The letter sampler of every position.
+         * @param wordlength  How many source words have each length.
+         */
+        Generator(AliasTable[] letters, int[] wordlength) {
+            this.letters = letters;
+            this.length = -1;
+            int sum1 = 0;
+            for (int i = 0; i < wordlength.length; i++) {
+                sum1 += wordlength[i];
+            }
+            double sum = 0;
+            for (int i = 0; i < wordlength.length; i++) sum += i * (double) wordlength[i] / sum1;
+            double mean = sum;
+            double sigma = 0;
+            for (int i = 0; i < wordlength.length; i++) {
+                sigma = Math.pow(wordlength[i] - mean, 2);
+            }
+            sigma = sigma / wordlength.length - 1;
+            this.mean = mean;
+            this.sigma = sigma;
+        }
 
-                int weightSum = 0;
-                for (int j = 0; j < 26; j++) {
-                    weightSum += letter[kk][j];
-                }
+        /**
+         * @return The mean length of the generated words, from a fixed sample of lengths,
+         * since the Gaussian lengths are clamped to 1..{@value #MAX_WORD_LENGTH}.
+         */
+        double meanLength() {
+            if (length > 0) return length;
+            SplittableRandom random = new SplittableRandom(0); // Not split from the seed: the dictionaries stay the same
+            long sum = 0;
+            for (int i = 0; i < 10000; i++) {
+                sum += sampleLengthGaussian(random, mean, sigma, 1, MAX_WORD_LENGTH);
+            }
+            return sum / 10000.0;
+        }
 
-                if (weightSum <= 0) {  // <-- secondary safety fix
-                    sb.append((char) ('a' + rand.nextInt(26)));
-                    continue;
+        /**
+         * Generates a dictionary and inserts every word into both tries.
+         *
+         * @param dictSize The number of words.
+         * @param random   The random generator of this dictionary.
+         * @param trie     The trie receiving the words.
+         * @param ctrie    The compressed trie receiving the words.
+         */
+        void generate(int dictSize, SplittableRandom random, Trie trie, CompressedTrie ctrie) {
+            char[] word = new char[MAX_WORD_LENGTH];
+            for (int i = 0; i < dictSize; i++) {
+                int n = length > 0 ? length : sampleLengthGaussian(random, mean, sigma, 1, MAX_WORD_LENGTH);
+                for (int k = 0; k < n; k++) {
+                    word[k] = (char) ('a' + letters[Math.min(k, letters.length - 1)].sample(random));
                 }
+                String w = new String(word, 0, n);
+                trie.insert(w);
+                ctrie.insert(w);
+            }
+        }
+    }
 
-                int rnd = rand.nextInt(weightSum);
+    public static int sampleLengthGaussian(SplittableRandom rnd, double mu, double sigma, int minLen, int maxLen) {
+        double u1 = 1 - rnd.nextDouble(); // In (0, 1], so the logarithm is finite
+        double u2 = rnd.nextDouble();
+        double z = Math.sqrt(-2.0 * Math.log(u1)) * Math.cos(2.0 * Math.PI * u2);
 
-                int j;
-                for (j = 0; j < 26; j++) {
-                    if (rnd < letter[kk][j]) break;
-                    rnd -= letter[kk][j];
-                }
+        int len = (int) Math.round(mu + sigma * z);
 
-                sb.append((char) (j + 'a'));
-            }
+        if (len < minLen) len = minLen;
+        if (len > maxLen) len = maxLen;
 
-            trie.insert(sb.toString());
-            ctrie.insert(sb.toString());
-            sb.setLength(0);
-        }
+        return len;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,333 @@
+package omadiki;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import java.lang.instrument.Instrumentation;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Measures the real heap footprint of a data structure by walking its object graph.
+ * <p>
+ * Unlike the {@code getTotalMemory} estimates, the size of every object is the one the
+ * running JVM reports through {@link Instrumentation#getObjectSize(Object)}, so headers,
+ * compressed oops, field packing and alignment are accounted for. Every object reachable
+ * from the root through instance fields is counted once. Objects held by static fields,
+ * such as shared empty tables, are shared by every instance and are not retained by the
+ * root, so they are neither counted nor walked into.
+ * </p>
+ * <p>
+ * The {@code Instrumentation} comes from running this class as a Java agent, with
+ * {@code -javaagent:heapmeter.jar}, a jar holding only the manifest
+ * {@code src/omadiki/HeapMeter.mf}. The agent also opens the packages of the JDK modules
+ * to this class, so the fields of JDK objects, such as the array of a {@code String},
+ * can be read.
+ * </p>
+ * <p>
+ * The bytes are split into components. An object belongs to the component of the field
+ * that refers to it ({@code "Class#field"}), else to the component of its class or of a
+ * superclass ({@code "Class"}), else to the component of the object it was first reached
+ * from; the root belongs to {@code "other"} unless its class is mapped.
+ * </p>
+ */
+public final class HeapMeter {
+    /** The component of the objects that no mapping covers. */
+    private static final String OTHER = "other";
+
+    /** Set by the agent; {@code null} if the JVM was started without it. */
+    private static volatile Instrumentation instrumentation;
+
+    /**
+     * The layout of the instances of a class.
+     */
+    private static final class Layout {
+        /** The size of an instance. */
+        final long size;
+        /** The reference fields, accessible. */
+        final Field[] references;
+        /** The names of the reference fields, as {@code "Class#field"}, in the order of {@code references}. */
+        final String[] names;
+
+        /**
+         * @param size       The size of an instance.
+         * @param references The reference fields.
+         * @param names      The names of the reference fields.
+         */
+        Layout(long size, Field[] references, String[] names) {
+            this.size = size;
+            this.references = references;
+            this.names = names;
+        }
+    }
+
+    /**
+     * The footprint of a data structure, per component.
+     */
+    public static final class Footprint {
+        /** The bytes of every component, in the order they were first met. */
+        private final Map<String, long[]> components = new LinkedHashMap<>();
+        /** The number of shared objects that were reached but not counted. */
+        private long shared;
+
+        /**
+         * @param component A component.
+         * @param bytes     The size of one of its objects.
+         */
+        private void add(String component, long bytes) {
+            long[] c = components.computeIfAbsent(component, k -> new long[2]);
+            c[0]++;
+            c[1] += bytes;
+        }
+
+        /**
+         * @return The retained size of the structure, in bytes.
+         */
+        public long bytes() {
+            long sum = 0;
+            for (long[] c : components.values()) sum += c[1];
+            return sum;
+        }
+
+        /**
+         * @param component A component.
+         * @return The bytes of its objects, 0 if it has none.
+         */
+        public long bytes(String component) {
+            long[] c = components.get(component);
+            return c == null ? 0 : c[1];
+        }
+
+        /**
+         * @param component A component.
+         * @return The number of its objects, 0 if it has none.
+         */
+        public long objects(String component) {
+            long[] c = components.get(component);
+            return c == null ? 0 : c[0];
+        }
+
+        /**
+         * @return The components that have objects, in the order they were first met.
+         */
+        public List<String> components() {
+            return new ArrayList<>(components.keySet());
+        }
+
+        /**
+         * @return The number of objects reached through static fields, which are not counted.
+         */
+        public long shared() {
+            return shared;
+        }
+
+        /**
+         * @return The components with their bytes and object counts, e.g.
+         * {@code "nodes 1200 B (50), labels 300 B (1)"}.
+         */
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder();
+            for (Map.Entry<String, long[]> e : components.entrySet()) {
+                if (s.length() > 0) s.append(", ");
+                s.append(e.getKey()).append(' ').append(e.getValue()[1])
+                        .append(" B (").append(e.getValue()[0]).append(')');
+            }
+            return s.toString();
+        }
+    }
+
+    /** The object alignment of the VM. */
+    private final long alignment;
+    /** Whether references are compressed. */
+    private final boolean compressedOops;
+    /** The JVM's object sizes. */
+    private final Instrumentation sizes;
+    /** The layout of every class met so far. */
+    private final Map<Class<?>, Layout> layouts = new HashMap<>();
+    /** The classes whose static fields are already registered as shared. */
+    private final Map<Class<?>, Boolean> registered = new HashMap<>();
+
+    /**
+     * Entry point of the agent: keeps the {@code Instrumentation} and opens every package
+     * of the JDK modules to this class.
+     *
+     * @param args Ignored.
+     * @param inst The instrumentation of the JVM.
+     */
+    public static void premain(String args, Instrumentation inst) {
+        Module self = HeapMeter.class.getModule();
+        for (Module module : ModuleLayer.boot().modules()) {
+            Map<String, Set<Module>> opens = new HashMap<>();
+            for (String p : module.getPackages()) {
+                opens.put(p, Set.of(self));
+            }
+            inst.redefineModule(module, Set.of(), Map.of(), opens, Set.of(), Map.of());
+        }
+        instrumentation = inst;
+    }
+
+    /**
+     * Reads the layout parameters of the running JVM.
+     *
+     * @throws IllegalStateException If the JVM was started without the agent.
+     */
+    public HeapMeter() {
+        sizes = instrumentation;
+        if (sizes == null) {
+            throw new IllegalStateException("The heap meter needs its agent: run java with -javaagent:heapmeter.jar");
+        }
+        HotSpotDiagnosticMXBean vm = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+        alignment = Long.parseLong(vm.getVMOption("ObjectAlignmentInBytes").getValue());
+        compressedOops = Boolean.parseBoolean(vm.getVMOption("UseCompressedOops").getValue());
+    }
+
+    /**
+     * @return The layout parameters, e.g. {@code "compressed oops, 8-byte alignment"}.
+     */
+    public String describe() {
+        return (compressedOops ? "compressed" : "uncompressed") + " oops, " + alignment + "-byte alignment";
+    }
+
+    /**
+     * Measures everything a root retains.
+     *
+     * @param root       The root of the structure.
+     * @param components Maps {@code "Class"} (also covering subclasses) or
+     *                   {@code "Class#field"} names to component names.
+     * @return The footprint.
+     */
+    public Footprint measure(Object root, Map<String, String> components) {
+        Footprint footprint = new Footprint();
+        IdentityHashMap<Object, Boolean> seen = new IdentityHashMap<>();
+        IdentityHashMap<Object, Boolean> statics = new IdentityHashMap<>();
+        ArrayDeque<Object> objects = new ArrayDeque<>();
+        ArrayDeque<String> owners = new ArrayDeque<>();
+        objects.push(root);
+        owners.push(componentOf(root.getClass(), components, OTHER));
+        seen.put(root, Boolean.TRUE);
+
+        while (!objects.isEmpty()) {
+            Object o = objects.pop();
+            String component = owners.pop();
+            Class<?> c = o.getClass();
+            registerStatics(c, statics);
+            if (statics.containsKey(o)) {
+                footprint.shared++;
+                continue;
+            }
+
+            if (c.isArray()) {
+                footprint.add(component, sizes.getObjectSize(o));
+                if (!c.getComponentType().isPrimitive()) {
+                    for (Object e : (Object[]) o) {
+                        if (e != null && seen.put(e, Boolean.TRUE) == null) {
+                            objects.push(e);
+                            owners.push(componentOf(e.getClass(), components, component));
+                        }
+                    }
+                }
+                continue;
+            }
+
+            Layout layout = layout(o);
+            footprint.add(component, layout.size);
+            for (int i = 0; i < layout.references.length; i++) {
+                Object e = read(layout.references[i], o);
+                if (e != null && seen.put(e, Boolean.TRUE) == null) {
+                    String field = components.get(layout.names[i]);
+                    objects.push(e);
+                    owners.push(field != null ? field : componentOf(e.getClass(), components, component));
+                }
+            }
+        }
+        return footprint;
+    }
+
+    /**
+     * @param c          A class.
+     * @param components The component mappings.
+     * @param inherited  The component of the object the instance was reached from.
+     * @return The component of an instance of the class.
+     */
+    private static String componentOf(Class<?> c, Map<String, String> components, String inherited) {
+        for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+            String component = components.get(k.getName());
+            if (component != null) return component;
+        }
+        return inherited;
+    }
+
+    /**
+     * Marks the objects held by the static fields of a class and its superclasses as
+     * shared, the first time an instance of the class is met.
+     *
+     * @param c       A class.
+     * @param statics The shared objects.
+     */
+    private void registerStatics(Class<?> c, IdentityHashMap<Object, Boolean> statics) {
+        for (Class<?> k = c; k != null && registered.put(k, Boolean.TRUE) == null; k = k.getSuperclass()) {
+            for (Field f : k.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers()) && !f.getType().isPrimitive()) {
+                    Object value = read(access(f), null);
+                    if (value != null) statics.put(value, Boolean.TRUE);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param o An object that is not an array.
+     * @return The layout of its class, computed on first use; every instance of a class
+     * has the same size.
+     */
+    private Layout layout(Object o) {
+        Class<?> c = o.getClass();
+        Layout layout = layouts.get(c);
+        if (layout != null) return layout;
+
+        List<Field> references = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        for (Class<?> k = c; k != null; k = k.getSuperclass()) {
+            for (Field f : k.getDeclaredFields()) {
+                if (!Modifier.isStatic(f.getModifiers()) && !f.getType().isPrimitive()) {
+                    references.add(access(f));
+                    names.add(k.getName() + "#" + f.getName());
+                }
+            }
+        }
+        layout = new Layout(sizes.getObjectSize(o), references.toArray(new Field[0]), names.toArray(new String[0]));
+        layouts.put(c, layout);
+        return layout;
+    }
+
+    /**
+     * @param f A field.
+     * @return The same field, made accessible.
+     */
+    private static Field access(Field f) {
+        f.setAccessible(true); // The agent opened the JDK packages
+        return f;
+    }
+
+    /**
+     * @param f An accessible reference field.
+     * @param o The object holding it, or {@code null} for a static field.
+     * @return The value of the field.
+     */
+    private static Object read(Field f, Object o) {
+        try {
+            return f.get(o);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
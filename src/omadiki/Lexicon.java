@@ -0,0 +1,62 @@
+package omadiki;
+
+/**
+ * The queries the application serves from a loaded dictionary.
+ * <p>
+ * It is implemented by the mutable {@code omadiki.robin.CompressedTrie} and by its
+ * read-only snapshots, so that the {@link Menu} can serve from either of them.
+ */
+public interface Lexicon {
+
+    /**
+     * Searches for a word and, if it is found, increments its importance.
+     *
+     * @param word The word to search for.
+     * @return {@code true} if the word exists, {@code false} otherwise.
+     */
+    boolean search(CharSequence word);
+
+    /**
+     * Retrieves the {@code k} most frequent words starting with the given prefix.
+     *
+     * @param prefix The starting prefix.
+     * @param k      The maximum number of words to return, or -1 for all of them.
+     * @return A {@link MinHeap} containing {@link DictionaryWord} objects (word and frequency).
+     */
+    MinHeap getWordsWithPrefix(String prefix, int k);
+
+    /**
+     * Counts the words that start with the given prefix.
+     *
+     * @param prefix The prefix.
+     * @return The number of words.
+     */
+    int countWordsWithPrefix(String prefix);
+
+    /**
+     * Computes the average importance of the words that start with the given prefix.
+     *
+     * @param prefix The prefix.
+     * @return The average importance, or 0 if no word starts with the prefix.
+     */
+    float getAverageFrequency(String prefix);
+
+    /**
+     * Predicts the next letter based on the highest average frequency of words
+     * that follow the prefix.
+     *
+     * @param prefix The current input prefix.
+     * @return The predicted next character, or '\0' if no prediction can be made.
+     */
+    char predictNextLetter(String prefix);
+
+    /**
+     * Predicts the most likely continuation of the prefix by following, one node after
+     * the other, the child with the highest average frequency.
+     *
+     * @param prefix The current input prefix.
+     * @param n      The maximum number of characters to predict, or -1 for no limit.
+     * @return The predicted characters that follow the prefix; empty if no prediction can be made.
+     */
+    String predictCompletion(String prefix, int n);
+}
@@ -1,9 +1,16 @@
 package omadiki;
 
+import omadiki.robin.BulkLoader;
 import omadiki.robin.CompressedTrie;
+import omadiki.robin.FrozenTrie;
+import omadiki.robin.ImportanceLog;
+import omadiki.robin.LiveLexicon;
+import omadiki.robin.SpellChecker;
+import omadiki.robin.TextIngester;
 
 import java.io.*;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * The main entry point for the application.
@@ -16,16 +23,91 @@ public final class Main {
     /**
      * Main method that executes the application.
      * <p>
-     * Requires exactly two command line arguments: the dictionary file path
-     * and the text file path.
+     * Requires two command line arguments: the dictionary file path
+     * and the text file path. The options are:
+     * <ul>
+     *     <li>{@code -save <image>}: after parsing, also write the trie to a binary image.</li>
+     *     <li>{@code -image <image>}: load a binary image written by {@code -save} instead of
+     *     parsing the dictionary and text files (which are then not needed).</li>
+     *     <li>{@code -threads <n>}: the number of threads that read the text file
+     *     (default: the number of processors).</li>
+     *     <li>{@code -topk <k>}: how many completions every trie node caches for the
+     *     "Top K" menu option (default: 10; 0 turns the cache off).</li>
+     *     <li>{@code -watch}: keep watching the dictionary file and apply its changes
+     *     to the trie while the menu runs; cannot be used with {@code -image}.</li>
+     *     <li>{@code -log <dir>}: keep the importance counters in a write-ahead log in the
+     *     directory. If it already holds a log, the counters are restored from it and the
+     *     text file is not read; cannot be used with {@code -image} or {@code -watch}.</li>
+     *     <li>{@code -fsync <always|periodic|never>}: when the log is forced to the disk
+     *     (default: periodic).</li>
+     *     <li>{@code -spellcheck <report>}: write the words of the text file that are not in
+     *     the dictionary, with their counts, first positions and suggested corrections, to
+     *     the report as JSON lines, print the throughput and exit instead of starting the
+     *     menu; cannot be used with {@code -image}, {@code -watch} or {@code -log}.</li>
+     * </ul>
      *
-     * @param args Command line arguments: args[0] is the dictionary file, args[1] is the text file.
+     * @param args Command line arguments: the dictionary file and the text file, plus options.
      */
     public static void main(String[] args) {
-        if  (args.length != 2) {
+        String image = null;
+        String save = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int topK = 10;
+        boolean watch = false;
+        String logDir = null;
+        String report = null;
+        ImportanceLog.Fsync fsync = ImportanceLog.Fsync.PERIODIC;
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-watch")) {
+                watch = true;
+                continue;
+            }
+            if (args[i].startsWith("-") && i + 1 == args.length) {
+                System.err.println("Option " + args[i] + " needs a value");
+                System.exit(1);
+            }
+            if (args[i].equals("-image")) {
+                image = args[++i];
+            } else if (args[i].equals("-save")) {
+                save = args[++i];
+            } else if (args[i].equals("-threads")) {
+                threads = parseCount(args[++i], 1);
+            } else if (args[i].equals("-topk")) {
+                topK = parseCount(args[++i], 0);
+            } else if (args[i].equals("-log")) {
+                logDir = args[++i];
+            } else if (args[i].equals("-fsync")) {
+                fsync = parseFsync(args[++i]);
+            } else if (args[i].equals("-spellcheck")) {
+                report = args[++i];
+            } else {
+                files.add(args[i]);
+            }
+        }
+
+        if (image != null && watch) {
+            System.err.println("A binary image cannot be watched");
+            System.exit(1);
+        }
+        if (logDir != null && (image != null || watch)) {
+            System.err.println("The importance log cannot be used with " + (watch ? "-watch" : "-image"));
+            System.exit(1);
+        }
+        if (report != null && (image != null || watch || logDir != null)) {
+            System.err.println("The spell check cannot be used with " + (image != null ? "-image" : watch ? "-watch" : "-log"));
+            System.exit(1);
+        }
+        if (image != null) {
+            Menu.startMenu(loadImage(new File(image)));
+            return;
+        }
+
+        if  (files.size() != 2) {
             System.err.println("Must have dictionary file and text file");
             System.exit(1);
         }
+        args = files.toArray(new String[0]);
 
         File dic = new File(args[0]);
         if (!dic.exists()) {
@@ -39,58 +121,207 @@ public final class Main {
             System.exit(1);
         }
 
-        CompressedTrie trie = new CompressedTrie();
-        parseLexicon(trie, dic);
-        parseTxt(trie, txt);
+        CompressedTrie trie = parseLexicon(dic);
+        if (report != null) {
+            spellCheck(trie, txt, threads, new File(report));
+            trie.setCompletionCacheSize(topK);
+            if (save != null) {
+                saveImage(trie, new File(save));
+            }
+            return;
+        }
+        if (logDir == null) {
+            parseTxt(trie, txt, threads);
+        } else {
+            openLog(trie, txt, threads, new File(logDir), fsync);
+        }
+        trie.setCompletionCacheSize(topK);
+
+        if (save != null) {
+            saveImage(trie, new File(save));
+        }
 
+        if (watch) {
+            Menu.startMenu(watchLexicon(trie, dic));
+            return;
+        }
         Menu.startMenu(trie);
 
     }
 
     /**
-     * Reads a lexicon (dictionary) file, inserting each word into the Compressed Trie.
-     * Words are trimmed and converted to lowercase before insertion.
+     * Opens a binary trie image, exiting if it cannot be read.
      *
-     * @param trie The {@code CompressedTrie} to populate.
-     * @param f The {@code File} object representing the dictionary/lexicon file.
+     * @param f The image file.
+     * @return The snapshot served from the mapped file.
      */
-    private static void parseLexicon(CompressedTrie trie, File f) {
-        try (BufferedReader reader = new BufferedReader(new FileReader(f)))  {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                line = line.trim();
-                line = line.toLowerCase();
-                trie.insert(line);
+    private static FrozenTrie loadImage(File f) {
+        if (!f.exists()) {
+            System.out.println("File " + f.getAbsolutePath() + " does not exist.");
+            System.exit(1);
+        }
+        try {
+            return FrozenTrie.load(f.toPath());
+        } catch (IOException e) {
+            System.err.println("Error reading image " + f.getAbsolutePath() + ": " + e.getMessage());
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Restores the importance counters from the log directory or, if it holds no log,
+     * reads the text file and starts a log with the resulting counters. The log is
+     * closed when the application exits. Exits if the directory cannot be used.
+     *
+     * @param trie    The trie built from the dictionary.
+     * @param txt     The text file.
+     * @param threads The number of threads reading the text file.
+     * @param dir     The log directory.
+     * @param fsync   When the log is forced to the disk.
+     */
+    private static void openLog(CompressedTrie trie, File txt, int threads, File dir, ImportanceLog.Fsync fsync) {
+        try {
+            if (!ImportanceLog.exists(dir.toPath())) {
+                parseTxt(trie, txt, threads);
             }
+            ImportanceLog log = ImportanceLog.open(trie, dir.toPath(), fsync);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing importance log " + dir.getAbsolutePath() + ": " + e.getMessage());
+                }
+            }));
+        } catch (IOException e) {
+            System.err.println("Error opening importance log " + dir.getAbsolutePath() + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Wraps the trie so that it follows the changes of its dictionary file, exiting if
+     * the file cannot be watched.
+     *
+     * @param trie The trie built from the dictionary.
+     * @param f    The dictionary file.
+     * @return The lexicon to serve the menu from.
+     */
+    private static LiveLexicon watchLexicon(CompressedTrie trie, File f) {
+        LiveLexicon live = new LiveLexicon(trie, f.toPath());
+        try {
+            live.watch();
+        } catch (IOException e) {
+            System.err.println("Error watching file " + f.getAbsolutePath() + ": " + e.getMessage());
+            System.exit(1);
+        }
+        return live;
+    }
+
+    /**
+     * Writes the trie, with its importance counters, to a binary image.
+     *
+     * @param trie The trie to save.
+     * @param f    The image file.
+     */
+    private static void saveImage(CompressedTrie trie, File f) {
+        try {
+            trie.freeze().save(f.toPath());
+        } catch (IOException e) {
+            System.err.println("Error writing image " + f.getAbsolutePath() + ": " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Reads a lexicon (dictionary) file and builds the Compressed Trie from all its words.
+     * Words are trimmed and converted to lowercase; the trie is built in bulk
+     * by the {@link BulkLoader}.
+     *
+     * @param f The {@code File} object representing the dictionary/lexicon file.
+     * @return The {@code CompressedTrie} holding every word of the lexicon.
+     */
+    private static CompressedTrie parseLexicon(File f) {
+        try {
+            return BulkLoader.load(f.toPath());
         } catch (IOException e) {
             System.err.println("Error reading file " + f.getAbsolutePath());
             System.exit(1);
+            return null;
         }
     }
 
     /**
      * Reads a text file to simulate word usage frequency.
-     * Each word in the text is sanitized (non-alphabetic characters removed)
-     * and searched in the trie. Successful searches increment the word's importance counter.
+     * The text is split into lowercase runs of letters by the {@code Tokenizer} and every
+     * run is searched in the trie. Successful searches increment the word's importance counter.
+     * With more than one thread, the file is split into parts that are read in parallel
+     * by the {@link TextIngester}.
      *
      * @param trie The {@code CompressedTrie} used to track word frequency.
      * @param f The {@code File} object representing the text file.
+     * @param threads The number of threads reading the file.
      */
-    private static void parseTxt(CompressedTrie trie, File f) {
-        try (Scanner sc = new Scanner(f))  {
-            String word;
-            while (sc.hasNext()) {
-                word = sc.next();
-                String[] words = word.split("[^A-Za-z]+");
-                for (String w : words) {
-                    w = w.toLowerCase();
-                    trie.search(w);
-                }
-            }
-
+    private static void parseTxt(CompressedTrie trie, File f, int threads) {
+        try {
+            TextIngester.ingest(trie, f.toPath(), threads);
         } catch (IOException e) {
             System.err.println("Error reading file " + f.getAbsolutePath());
             System.exit(1);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Reads a text file like {@link #parseTxt(CompressedTrie, File, int)} and writes the
+     * report of its unknown words, exiting if a file cannot be read or written.
+     *
+     * @param trie    The {@code CompressedTrie} used to track word frequency.
+     * @param f       The text file.
+     * @param threads The number of threads reading the file.
+     * @param report  The file that receives the report.
+     */
+    private static void spellCheck(CompressedTrie trie, File f, int threads, File report) {
+        SpellChecker checker = new SpellChecker(trie, threads);
+        try (Writer out = new BufferedWriter(new FileWriter(report))) {
+            checker.check(f.toPath(), out);
+        } catch (IOException e) {
+            System.err.println("Error spell-checking " + f.getAbsolutePath() + " into " + report.getAbsolutePath() + ": " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println(checker.summary());
+    }
+
+    /**
+     * Parses an fsync policy given on the command line, exiting if it is not one.
+     *
+     * @param value The name of the policy, in any case.
+     * @return The policy.
+     */
+    private static ImportanceLog.Fsync parseFsync(String value) {
+        try {
+            return ImportanceLog.Fsync.valueOf(value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Not an fsync policy (always, periodic, never): " + value);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a count given on the command line, exiting if it is not one.
+     *
+     * @param value The text of the number.
+     * @param min   The smallest count accepted.
+     * @return The number.
+     */
+    private static int parseCount(String value, int min) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min) return n;
+        } catch (NumberFormatException ignored) {
+        }
+        System.err.println("Not a number of at least " + min + ": " + value);
+        System.exit(1);
+        return 0;
+    }
+}
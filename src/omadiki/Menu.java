@@ -3,8 +3,6 @@ package omadiki;
 import java.util.Scanner;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import omadiki.robin.CompressedTrie;
-
 /**
  * Provides the command-line interface (CLI) for the Compressed Trie application.
  * It presents a menu of operations to the user, primarily utilizing the trie's
@@ -19,9 +17,9 @@ public final class Menu {
      * Starts the main interactive menu loop for the Compressed Trie application.
      * Continuously prompts the user for an action until the exit command (0) is given.
      *
-     * @param trie The initialized {@code CompressedTrie} instance containing words and frequencies.
+     * @param trie The initialized {@code Lexicon} (trie or trie snapshot) containing words and frequencies.
      */
-    public static void startMenu(CompressedTrie trie) {
+    public static void startMenu(Lexicon trie) {
         Scanner sc = new Scanner(System.in);
         int func;
 
@@ -31,6 +29,7 @@ public final class Menu {
             System.out.println("1 - Top K frequent words with prefix");
             System.out.println("2 - Average frequency of prefix");
             System.out.println("3 - Predict next letter");
+            System.out.println("4 - Predict completion");
 
             func = sc.nextInt();
             if (func == 0)
@@ -48,6 +47,9 @@ public final class Menu {
                 case 3:
                     predictNextLetter(trie, prefix);
                     break;
+                case 4:
+                    predictCompletion(trie, prefix, sc);
+                    break;
             }
         } while (true);
 
@@ -57,11 +59,11 @@ public final class Menu {
      * Executes the "Top K frequent words with prefix" operation.
      * Prompts the user for the value of K, retrieves the words, and prints them.
      *
-     * @param trie The {@code CompressedTrie} instance.
+     * @param trie The {@code Lexicon} instance.
      * @param prefix The prefix string provided by the user.
      * @param sc The shared {@code Scanner} instance for input.
      */
-    private static void topKFrequentWordsWithPrefix(CompressedTrie trie, String prefix, Scanner sc) {
+    private static void topKFrequentWordsWithPrefix(Lexicon trie, String prefix, Scanner sc) {
         int k;
         System.out.println("Give k:");
         k = sc.nextInt();
@@ -76,12 +78,11 @@ public final class Menu {
      * Executes the "Average frequency of prefix" operation.
      * Calculates the average importance of all words found under the given prefix.
      *
-     * @param trie The {@code CompressedTrie} instance.
+     * @param trie The {@code Lexicon} instance.
      * @param prefix The prefix string provided by the user.
      */
-    private static void getAverageFrequencyOfPrefix(CompressedTrie trie, String prefix) {
-        MinHeap heap = trie.getWordsWithPrefix(prefix, -1);
-        System.out.println("Average frequency of prefix: " + heap.getAvgFrequency());
+    private static void getAverageFrequencyOfPrefix(Lexicon trie, String prefix) {
+        System.out.println("Average frequency of prefix: " + trie.getAverageFrequency(prefix));
     }
 
     /**
@@ -89,10 +90,10 @@ public final class Menu {
      * Finds the most likely next character based on the average frequency of all
      * words that could follow each possible next edge.
      *
-     * @param trie The {@code CompressedTrie} instance.
+     * @param trie The {@code Lexicon} instance.
      * @param prefix The prefix string provided by the user.
      */
-    private static void predictNextLetter(CompressedTrie trie, String prefix) {
+    private static void predictNextLetter(Lexicon trie, String prefix) {
         char l = trie.predictNextLetter(prefix);
         if (l == 0)
             System.out.println("No larger words exist");
@@ -100,4 +101,23 @@ public final class Menu {
             System.out.println("Predict next letter: " + l);
     }
 
+    /**
+     * Executes the "Predict completion" operation.
+     * Prompts the user for the maximum number of characters and prints the most likely
+     * continuation of the prefix.
+     *
+     * @param trie The {@code Lexicon} instance.
+     * @param prefix The prefix string provided by the user.
+     * @param sc The shared {@code Scanner} instance for input.
+     */
+    private static void predictCompletion(Lexicon trie, String prefix, Scanner sc) {
+        System.out.println("Give the number of characters (-1 for all):");
+        int n = sc.nextInt();
+        String completion = trie.predictCompletion(prefix, n);
+        if (completion.isEmpty())
+            System.out.println("No larger words exist");
+        else
+            System.out.println("Predicted completion: " + prefix + completion);
+    }
+
 }
@@ -6,33 +6,85 @@ import java.util.Arrays;
  * Implements a Min-Heap data structure optimized for storing and retrieving
  * the top N elements (words with the highest 'importance' frequency).
  * <p>
- * The heap property is based on the 'importance' of the {@code DictionaryWord}
- * objects, where the root holds the word with the minimum importance.
+ * The heap is ordered like {@link DictionaryWord#compare}: by importance and, for
+ * equal importance, by word, so the root holds the least important word.
+ * The importances are kept in an {@code int[]}, next to either the words or, for a heap
+ * constructed with a {@link Handles} object, {@code int} handles that it compares and
+ * turns into words. A trie can use its node numbers as handles, so that sifting only
+ * compares ints and no word is built before {@link #getSorted()} (or another method that
+ * returns words) asks for it. Callers can also ask {@link #admits(int)} before building
+ * or inserting a word that would be rejected anyway.
  * This class supports both a fixed-capacity top-K mode and a dynamic-capacity mode.
  */
 public class MinHeap {
 
-    /** The array representing the heap, using 1-based indexing. */
-    private DictionaryWord[] contents;
+    /**
+     * The words behind the handles of a heap.
+     */
+    public interface Handles {
+        /**
+         * Compares the words of two handles, like {@link String#compareTo}.
+         *
+         * @param a The first handle.
+         * @param b The second handle.
+         * @return A negative integer, zero, or a positive integer as the first word is
+         * less than, equal to, or greater than the second.
+         */
+        int compare(int a, int b);
+
+        /**
+         * Builds the word of a handle.
+         *
+         * @param handle The handle.
+         * @return The word.
+         */
+        String word(int handle);
+    }
+
+    /** The importances of the heap elements, using 1-based indexing. */
+    private int[] importances;
+    /** The words of the heap elements, parallel to {@code importances}; {@code null} in a heap of handles. */
+    private String[] words;
+    /** The handles of the heap elements, parallel to {@code importances}; {@code null} in a heap of words. */
+    private int[] handles;
+    /** Compares and builds the words of the handles; {@code null} in a heap of words. */
+    private final Handles elements;
     /** The current number of elements in the heap. */
     private int size;
-    /** The maximum number of elements the current array can hold (array length - 1). */
+    /** The maximum number of elements the current arrays can hold (array length - 1). */
     private int capacity;
     /** Flag indicating whether the heap should dynamically resize (true) or operate in fixed-capacity/top-K mode (false). */
     private boolean resize;
 
     /**
-     * Constructs a MinHeap.
+     * Constructs a MinHeap of words, filled with {@link #insert(String, int)}.
      *
      * @param n The maximum desired size (K). If {@code n} is -1, the heap operates
      * in dynamic-capacity (resizable) mode.
      */
     public MinHeap(int n) {
+        this(n, null);
+    }
+
+    /**
+     * Constructs a MinHeap of handles, filled with {@link #insert(int, int)}.
+     *
+     * @param n        The maximum desired size (K). If {@code n} is -1, the heap operates
+     *                 in dynamic-capacity (resizable) mode.
+     * @param elements Compares and builds the words of the handles; {@code null} for a heap of words.
+     */
+    public MinHeap(int n, Handles elements) {
         if (n == -1) {
             n = 1;
             resize = true;
         }
-        this.contents = new DictionaryWord[n + 1];
+        this.importances = new int[n + 1];
+        if (elements == null) {
+            this.words = new String[n + 1];
+        } else {
+            this.handles = new int[n + 1];
+        }
+        this.elements = elements;
         this.capacity = n + 1;
         this.size = 0;
     }
@@ -46,173 +98,359 @@ public class MinHeap {
         return this.size == 0;
     }
 
+    /**
+     * @return The number of elements in the heap.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Checks if the heap is in fixed-capacity (top-K) mode and holds K words, so that
+     * a new word only gets in if it beats the minimum.
+     *
+     * @return {@code true} if the heap is full.
+     */
+    public boolean isFull() {
+        return !this.resize && this.size == this.capacity - 1;
+    }
+
+    /**
+     * Returns the element with the minimum importance without removing it.
+     *
+     * @return The {@code DictionaryWord} at the root, or {@code null} if the heap is empty.
+     */
+    public DictionaryWord getMin() {
+        return isEmpty() ? null : new DictionaryWord(word(1), this.importances[1]);
+    }
+
+    /**
+     * Returns the minimum importance in the heap without creating any object.
+     *
+     * @return The importance at the root, or {@code Integer.MIN_VALUE} if the heap is empty.
+     */
+    public int getMinImportance() {
+        return isEmpty() ? Integer.MIN_VALUE : this.importances[1];
+    }
+
+    /**
+     * Checks, before its word is built, whether a word with the given importance could
+     * get into the heap. A full top-K heap only admits words at least as important as its
+     * minimum (on equal importance the word decides).
+     *
+     * @param importance The importance of the candidate word.
+     * @return {@code true} if {@link #insert(String, int)} could keep the word.
+     */
+    public boolean admits(int importance) {
+        if (!isFull()) {
+            return true;
+        }
+        return this.size > 0 && importance >= this.importances[1];
+    }
+
     /**
      * Inserts a word into the heap, maintaining the min-heap property.
      * <p>
      * In fixed-capacity mode (top-K), if the heap is full, the new word is
-     * inserted only if its importance is greater than the current minimum (root).
+     * inserted only if it is greater than the current minimum (root).
      *
      * @param word The {@code DictionaryWord} to insert.
      */
     public void insert(DictionaryWord word) {
+        insert(word.getWord(), word.getImportance());
+    }
 
-        if (this.size < this.capacity) {
-            int index = this.size + 1;
-
-            if (!this.resize && index == capacity) {
-                // Fixed-capacity (Top-K) mode: Heap is full.
-                if (this.contents[1].compare(word) < 0) {
-                    // Case 1: New word is more important than the minimum. Replace the minimum.
-                    this.deleteMin();
-                    index--; // Slot previously occupied by the minimum is now available
-                } else {
-                    // Case 2: New word is less important than or equal to the minimum. Do not insert.
-                    return;
-                }
-            }
+    /**
+     * Inserts a word into the heap, maintaining the min-heap property.
+     * <p>
+     * In fixed-capacity mode (top-K), if the heap is full, the new word is
+     * inserted only if it is greater than the current minimum (root).
+     *
+     * @param word       The word.
+     * @param importance Its importance.
+     * @throws IllegalStateException If the heap holds handles.
+     */
+    public void insert(String word, int importance) {
+        if (this.words == null) {
+            throw new IllegalStateException("This heap holds handles, not words");
+        }
+        insert(importance, 0, word);
+    }
 
-            while (index > 1 && this.contents[(index / 2)].compare(word) > 0) {
-                this.contents[index] = this.contents[(index / 2)];
-                index = index / 2;
-            }
+    /**
+     * Inserts a handle into the heap, maintaining the min-heap property.
+     * <p>
+     * In fixed-capacity mode (top-K), if the heap is full, the new handle is
+     * inserted only if it is greater than the current minimum (root).
+     *
+     * @param handle     The handle of the word.
+     * @param importance Its importance.
+     * @throws IllegalStateException If the heap holds words.
+     */
+    public void insert(int handle, int importance) {
+        if (this.handles == null) {
+            throw new IllegalStateException("This heap holds words, not handles");
+        }
+        insert(importance, handle, null);
+    }
 
-            this.contents[index] = word;
-            this.size++;
+    /**
+     * Inserts an element, maintaining the min-heap property.
+     *
+     * @param importance The importance of the element.
+     * @param handle     Its handle, in a heap of handles.
+     * @param word       Its word, in a heap of words.
+     */
+    private void insert(int importance, int handle, String word) {
+        if (isFull()) {
+            // Fixed-capacity (Top-K) mode: replace the minimum only if the new word beats it.
+            if (this.size > 0 && compare(importance, handle, word, 1) > 0) {
+                set(1, importance, handle, word);
+                siftDown(1, this.size);
+            }
+            return;
+        }
 
+        int index = ++this.size;
+        while (index > 1 && compare(importance, handle, word, index / 2) < 0) {
+            move(index / 2, index);
+            index = index / 2;
+        }
+        set(index, importance, handle, word);
 
-            // If in dynamic mode, resize when the array is full
-            if (this.resize && size == capacity - 1) {
-                incrementContents();
-            }
+        // If in dynamic mode, resize when the arrays are full
+        if (this.resize && size == capacity - 1) {
+            incrementContents();
         }
     }
 
     /**
-     * Increases the array capacity (doubles the size) and copies the existing elements
-     * to the new, larger array. Used only when {@code resize} is true.
+     * Orders an element against the element at index {@code x}, like {@link DictionaryWord#compare}.
+     *
+     * @param importance The importance of the element.
+     * @param handle     Its handle, in a heap of handles.
+     * @param word       Its word, in a heap of words.
+     * @param x          The 1-based index of the other element.
+     * @return A negative integer, zero, or a positive integer as the element is
+     * less than, equal to, or greater than the one at {@code x}.
      */
-    private void incrementContents() {
-        this.capacity = this.capacity * 2;
-        this.contents = Arrays.copyOf(this.contents, this.capacity);
+    private int compare(int importance, int handle, String word, int x) {
+        if (importance != this.importances[x]) {
+            return Integer.compare(importance, this.importances[x]);
+        }
+        return this.words != null ? word.compareTo(this.words[x]) : this.elements.compare(handle, this.handles[x]);
     }
 
     /**
-     * Removes and returns the element with the minimum importance (the root of the Min-Heap).
+     * Stores an element at an index.
      *
-     * @return The {@code DictionaryWord} with the minimum importance, or {@code null} if the heap is empty.
+     * @param x          The 1-based index.
+     * @param importance The importance of the element.
+     * @param handle     Its handle, in a heap of handles.
+     * @param word       Its word, in a heap of words.
      */
-    public DictionaryWord deleteMin() {
-        DictionaryWord min = null, last;
-        int x = 1, child = 0;
-        if (!isEmpty()) {
-            min = this.contents[1];
-            last = this.contents[this.size];
-            this.size--;
-            while ((x * 2) <= this.size) {
-                child = x * 2;
-                if (child != this.size
-                        && this.contents[child + 1].compare(this.contents[child]) < 0) {
-                    child++;
-                }
-                if (last.compare(this.contents[child]) > 0) {
-                    this.contents[x] = this.contents[child];
-                    x = child;
-                } else {
-                    break;
-                }
-            }
-            this.contents[x] = last;
+    private void set(int x, int importance, int handle, String word) {
+        this.importances[x] = importance;
+        if (this.words != null) {
+            this.words[x] = word;
+        } else {
+            this.handles[x] = handle;
         }
-        return min;
     }
 
     /**
-     * Calculates the average importance (frequency) of all words currently in the heap.
+     * Copies the element at one index to another.
      *
-     * @return The average importance as a float, or 0 if the heap is empty.
+     * @param from The 1-based index of the element.
+     * @param to   The 1-based index it is copied to.
      */
-    public float getAvgFrequency() {
-        int sum = 0;
-        for (int i = 1; i <= this.size; i++) {
-            sum += this.contents[i].getImportance();
-        }
-        return size == 0 ? 0 : ((float) sum) / size;
+    private void move(int from, int to) {
+        set(to, this.importances[from], this.handles == null ? 0 : this.handles[from], this.words == null ? null : this.words[from]);
     }
 
     /**
-     * Helper method to partition the array for the Quicksort algorithm.
-     * Uses the importance value for comparison.
+     * Builds the word of an element.
      *
-     * @param word The array of words.
-     * @param low The starting index.
-     * @param high The ending index (pivot index).
-     * @return The final index of the pivot element.
+     * @param x The 1-based index of the element.
+     * @return Its word.
      */
-    private int partition(DictionaryWord[] word, int low, int high) {
-        DictionaryWord pivot = word[high];
-        int i = low - 1;
-        for (int j = low; j < high; j++) {
-            if(word[j].compare(pivot)>0){
-                i++;
-                swap(word,i,j);
-            }
-        }
+    private String word(int x) {
+        return this.words != null ? this.words[x] : this.elements.word(this.handles[x]);
+    }
 
-        swap(word,i+1,high);
-        return i+1;
+    /**
+     * Moves the element at {@code x} down until both its children are greater.
+     *
+     * @param x    The 1-based index of the element.
+     * @param last The last index that belongs to the heap.
+     */
+    private void siftDown(int x, int last) {
+        if (this.words != null) {
+            siftDownWord(x, last);
+        } else {
+            siftDownHandle(x, last);
+        }
     }
 
     /**
-     * Helper method to swap two elements in an array.
+     * {@link #siftDown} in a heap of words.
      *
-     * @param word The array of words.
-     * @param i The index of the first element.
-     * @param j The index of the second element.
+     * @param x    The 1-based index of the element.
+     * @param last The last index that belongs to the heap.
      */
-    private static void swap(DictionaryWord[] word , int i , int j){
-        DictionaryWord temp = word[i];
-        word[i]=word[j];
-        word[j]=temp;
+    private void siftDownWord(int x, int last) {
+        int[] imps = this.importances;
+        String[] w = this.words;
+        int imp = imps[x];
+        String word = w[x];
+        while (x * 2 <= last) {
+            int child = x * 2;
+            if (child != last && (imps[child + 1] < imps[child]
+                    || (imps[child + 1] == imps[child] && w[child + 1].compareTo(w[child]) < 0))) {
+                child++;
+            }
+            if (imp < imps[child] || (imp == imps[child] && word.compareTo(w[child]) <= 0)) {
+                break;
+            }
+            imps[x] = imps[child];
+            w[x] = w[child];
+            x = child;
+        }
+        imps[x] = imp;
+        w[x] = word;
     }
 
     /**
-     * Sorts the given array of words in place using the Quicksort algorithm.
+     * {@link #siftDown} in a heap of handles.
      *
-     * @param arr The array to be sorted.
-     * @param low The starting index.
-     * @param high The ending index.
+     * @param x    The 1-based index of the element.
+     * @param last The last index that belongs to the heap.
      */
-    private void quicksort(DictionaryWord[] arr, int low, int high) {
-        if (low >= high) return;
+    private void siftDownHandle(int x, int last) {
+        int[] imps = this.importances;
+        int[] h = this.handles;
+        int imp = imps[x];
+        int handle = h[x];
+        while (x * 2 <= last) {
+            int child = x * 2;
+            if (child != last && (imps[child + 1] < imps[child]
+                    || (imps[child + 1] == imps[child] && this.elements.compare(h[child + 1], h[child]) < 0))) {
+                child++;
+            }
+            if (imp < imps[child] || (imp == imps[child] && this.elements.compare(handle, h[child]) <= 0)) {
+                break;
+            }
+            imps[x] = imps[child];
+            h[x] = h[child];
+            x = child;
+        }
+        imps[x] = imp;
+        h[x] = handle;
+    }
 
-       int pivotIndex = partition(arr,low,high);
+    /**
+     * Increases the array capacity (doubles the size) and copies the existing elements
+     * to the new, larger arrays. Used only when {@code resize} is true.
+     */
+    private void incrementContents() {
+        this.capacity = this.capacity * 2;
+        this.importances = Arrays.copyOf(this.importances, this.capacity);
+        if (this.words != null) {
+            this.words = Arrays.copyOf(this.words, this.capacity);
+        } else {
+            this.handles = Arrays.copyOf(this.handles, this.capacity);
+        }
+    }
 
-       quicksort(arr, low, pivotIndex-1);
-       quicksort(arr, pivotIndex, high);
+    /**
+     * Removes and returns the element with the minimum importance (the root of the Min-Heap).
+     *
+     * @return The {@code DictionaryWord} with the minimum importance, or {@code null} if the heap is empty.
+     */
+    public DictionaryWord deleteMin() {
+        if (isEmpty()) {
+            return null;
+        }
+        DictionaryWord min = new DictionaryWord(word(1), this.importances[1]);
+        move(this.size, 1);
+        if (this.words != null) {
+            this.words[this.size] = null;
+        }
+        this.size--;
+        siftDown(1, this.size);
+        return min;
     }
 
     /**
-     * Creates a copy of the heap's contents (excluding the 0-index) into a new array.
+     * Calculates the average importance (frequency) of all words currently in the heap.
      *
-     * @return A new array containing the heap elements in their current unsorted order.
+     * @return The average importance as a float, or 0 if the heap is empty.
      */
-    private DictionaryWord[] getContentsCopy() {
-        DictionaryWord[] n = new DictionaryWord[size];
-        for (int i = 0; i < this.size; i++)
-            n[i] = this.contents[i+1];
-        return n;
+    public float getAvgFrequency() {
+        int sum = 0;
+        for (int i = 1; i <= this.size; i++) {
+            sum += this.importances[i];
+        }
+        return size == 0 ? 0 : ((float) sum) / size;
     }
 
     /**
-     * Retrieves all words from the heap, sorted by importance in descending order.
-     * The sorting is performed on a copy of the contents and does not modify the heap structure.
+     * Retrieves all words from the heap, sorted by importance in descending order
+     * (equal importances by word, descending). This is where the words of the handles are built.
+     * <p>
+     * The heap is heapsorted in place: every step moves the minimum behind the shrinking
+     * heap, which leaves the elements in descending order. Reversing them gives an
+     * ascending array, which is itself a valid min-heap, so the heap stays usable.
      *
      * @return An array of {@code DictionaryWord} objects sorted by importance.
      */
     public DictionaryWord[] getSorted() {
-        DictionaryWord[] a = getContentsCopy();
-        quicksort(a, 0, a.length-1);
-        return a;
+        for (int last = this.size; last > 1; last--) {
+            swap(1, last);
+            siftDown(1, last - 1);
+        }
+
+        DictionaryWord[] sorted = new DictionaryWord[this.size];
+        if (this.words != null) {
+            for (int i = 0; i < this.size; i++) {
+                sorted[i] = new DictionaryWord(this.words[i + 1], this.importances[i + 1]);
+            }
+        } else { // Build the words in handle order: for trie nodes, it follows the trie instead of jumping around
+            long[] order = new long[this.size];
+            for (int i = 0; i < this.size; i++) {
+                order[i] = ((long) this.handles[i + 1] << 32) | i;
+            }
+            Arrays.sort(order);
+            for (long o : order) {
+                int i = (int) o;
+                sorted[i] = new DictionaryWord(this.elements.word((int) (o >>> 32)), this.importances[i + 1]);
+            }
+        }
+        for (int i = 1, j = this.size; i < j; i++, j--) { // Descending -> ascending, a valid min-heap
+            swap(i, j);
+        }
+        return sorted;
+    }
+
+    /**
+     * Swaps two elements of the heap arrays.
+     *
+     * @param i The index of the first element.
+     * @param j The index of the second element.
+     */
+    private void swap(int i, int j) {
+        int imp = this.importances[i];
+        this.importances[i] = this.importances[j];
+        this.importances[j] = imp;
+        if (this.words != null) {
+            String word = this.words[i];
+            this.words[i] = this.words[j];
+            this.words[j] = word;
+        } else {
+            int handle = this.handles[i];
+            this.handles[i] = this.handles[j];
+            this.handles[j] = handle;
+        }
     }
 
     /**
@@ -226,7 +464,7 @@ public class MinHeap {
         StringBuilder sb = new StringBuilder();
         sb.append(this.size).append(", ");
         for (int i = 1; i <= this.size; i++) {
-            sb.append(this.contents[i]).append(", ");
+            sb.append(word(i)).append(":").append(this.importances[i]).append(", ");
         }
         return sb.toString();
     }
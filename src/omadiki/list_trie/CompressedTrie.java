@@ -184,6 +184,9 @@ public class CompressedTrie {
 		} else if (parent.label.equals(word)) {
 			// The edge label exactly matches the remaining word.
 			return parent.child.isEndOfWord;
+		} else if (!word.startsWith(parent.label)) {
+			// The word ends or differs inside the edge label.
+			return false;
 		} else {
 			String common = word.substring(findCommon(parent.label, word));
 			return searchRec(parent.child, common);
@@ -0,0 +1,230 @@
+package omadiki.robin;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * An immutable bit vector with constant-time {@code rank} and fast {@code select}.
+ * <p>
+ * The bits are stored in 64-bit words. Next to them there is a directory with the
+ * number of ones before every word (used for {@code rank}) and a sample of the
+ * word that holds every 64th zero (used to start {@code select0} close to its target).
+ * All three are kept in {@code java.nio} buffers so that they can be backed either
+ * by heap arrays or by a memory-mapped file. The samples for {@code select1} are not
+ * stored: they are computed from the rank directory, on the heap, the first time
+ * {@code select1} is called.
+ */
+final class BitVector {
+    /** How many zeros lie between two consecutive select samples. */
+    static final int SAMPLE_RATE = 64;
+
+    /** The bits, 64 per word, least significant bit first. */
+    private final LongBuffer words;
+    /** {@code ranks[w]} is the number of ones in the words before {@code w}. */
+    private final IntBuffer ranks;
+    /** {@code samples[s]} is the index of the word that holds zero number {@code s * SAMPLE_RATE}. */
+    private final IntBuffer samples;
+    /** The number of bits. */
+    private final int size;
+    /** {@code oneSamples[s]} is the index of the word that holds one number {@code s * SAMPLE_RATE}; built by the first {@code select1}. */
+    private volatile int[] oneSamples;
+
+    /**
+     * Constructs a bit vector over already built buffers.
+     *
+     * @param words   The bits.
+     * @param ranks   The rank directory ({@code words + 1} entries).
+     * @param samples The select0 samples.
+     * @param size    The number of bits.
+     */
+    BitVector(LongBuffer words, IntBuffer ranks, IntBuffer samples, int size) {
+        this.words = words;
+        this.ranks = ranks;
+        this.samples = samples;
+        this.size = size;
+    }
+
+    /**
+     * Builds a bit vector from raw bits, computing its rank directory and select samples.
+     *
+     * @param bits The bits, 64 per word.
+     * @param size The number of valid bits.
+     * @return The new bit vector.
+     */
+    static BitVector of(long[] bits, int size) {
+        int wordCount = (size + 63) >>> 6;
+        long[] w = Arrays.copyOf(bits, wordCount);
+        int[] r = new int[wordCount + 1];
+        int[] s = new int[size / SAMPLE_RATE + 1];
+        int seenZeros = 0;
+        int sampled = 0;
+
+        for (int i = 0; i < wordCount; i++) {
+            int valid = Math.min(64, size - (i << 6));
+            int ones = Long.bitCount(w[i]);
+            r[i + 1] = r[i] + ones;
+            int z = valid - ones;
+            while (sampled * SAMPLE_RATE < seenZeros + z) { // Zero number sampled*RATE lives in word i
+                s[sampled++] = i;
+            }
+            seenZeros += z;
+        }
+
+        return new BitVector(LongBuffer.wrap(w), IntBuffer.wrap(r), IntBuffer.wrap(Arrays.copyOf(s, sampled)), size);
+    }
+
+    /**
+     * @return The number of bits.
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return The raw words.
+     */
+    LongBuffer words() {
+        return words;
+    }
+
+    /**
+     * @return The rank directory.
+     */
+    IntBuffer ranks() {
+        return ranks;
+    }
+
+    /**
+     * @return The select0 samples.
+     */
+    IntBuffer samples() {
+        return samples;
+    }
+
+    /**
+     * Reads one bit.
+     *
+     * @param i The bit position.
+     * @return {@code true} if the bit is set.
+     */
+    boolean get(int i) {
+        return (words.get(i >>> 6) & (1L << i)) != 0;
+    }
+
+    /**
+     * Counts the ones strictly before position {@code i}.
+     *
+     * @param i The bit position.
+     * @return The number of ones in {@code [0, i)}.
+     */
+    int rank1(int i) {
+        int w = i >>> 6;
+        int r = ranks.get(w);
+        int bit = i & 63;
+        if (bit != 0) {
+            r += Long.bitCount(words.get(w) & ((1L << bit) - 1));
+        }
+        return r;
+    }
+
+    /**
+     * Finds the position of the {@code k}-th zero (0-based).
+     *
+     * @param k The number of the zero.
+     * @return Its bit position.
+     */
+    int select0(int k) {
+        int w = samples.get(k / SAMPLE_RATE);
+        // zeros before word w = 64 * w - ones before word w
+        while (((w + 1) << 6) - ranks.get(w + 1) <= k) {
+            w++;
+        }
+        int r = k - ((w << 6) - ranks.get(w)); // The r-th zero inside word w
+        long inverted = ~words.get(w);
+        for (int j = 0; j < r; j++) {
+            inverted &= inverted - 1; // Clear the lowest set bit
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(inverted);
+    }
+
+    /**
+     * Finds the position of the {@code k}-th one (0-based).
+     *
+     * @param k The number of the one.
+     * @return Its bit position.
+     */
+    int select1(int k) {
+        int[] s = oneSamples;
+        if (s == null) {
+            s = oneSamples = sampleOnes();
+        }
+        int w = s[k / SAMPLE_RATE];
+        while (ranks.get(w + 1) <= k) {
+            w++;
+        }
+        long bits = words.get(w);
+        for (int j = k - ranks.get(w); j > 0; j--) {
+            bits &= bits - 1; // Clear the lowest set bit
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    /**
+     * Computes the {@code select1} samples from the rank directory.
+     *
+     * @return The index of the word that holds every {@code SAMPLE_RATE}-th one.
+     */
+    private int[] sampleOnes() {
+        int wordCount = ranks.capacity() - 1;
+        int[] s = new int[ranks.get(wordCount) / SAMPLE_RATE + 1];
+        int sampled = 0;
+        for (int w = 0; w < wordCount; w++) {
+            while (sampled * SAMPLE_RATE < ranks.get(w + 1)) { // One number sampled*RATE lives in word w
+                s[sampled++] = w;
+            }
+        }
+        return Arrays.copyOf(s, sampled);
+    }
+
+    /**
+     * Estimates the memory used by the bit vector and its directories.
+     *
+     * @return The number of bytes.
+     */
+    long getTotalMemory() {
+        return 16L + 8L * words.capacity() + 16L + 4L * ranks.capacity() + 16L + 4L * samples.capacity();
+    }
+
+    /**
+     * Growable bit sequence used to build a {@link BitVector}.
+     */
+    static final class Builder {
+        /** The bits appended so far. */
+        private long[] bits = new long[16];
+        /** The number of bits appended so far. */
+        private int size;
+
+        /**
+         * Appends one bit.
+         *
+         * @param bit The bit to append.
+         */
+        void append(boolean bit) {
+            if ((size >>> 6) == bits.length) {
+                bits = Arrays.copyOf(bits, bits.length * 2);
+            }
+            if (bit) {
+                bits[size >>> 6] |= 1L << size;
+            }
+            size++;
+        }
+
+        /**
+         * @return The finished bit vector.
+         */
+        BitVector build() {
+            return BitVector.of(bits, size);
+        }
+    }
+}
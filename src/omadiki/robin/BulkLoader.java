@@ -0,0 +1,358 @@
+package omadiki.robin;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.IntStream;
+
+/**
+ * Builds a {@link CompressedTrie} from a whole lexicon at once, instead of
+ * inserting the words one at a time.
+ * <p>
+ * The lexicon file is memory-mapped and cut into chunks on line boundaries.
+ * The chunks are normalized (trimmed and lowercased) in parallel. The words are
+ * then sorted with an MSD radix sort whose partitioning steps double as the trie
+ * construction: after a range of words has been partitioned by its character at
+ * some depth, every group is exactly the range of one edge, duplicates end up next
+ * to each other, and the number of groups is the final size of the node's child table.
+ * So in a single pass each edge is created already compressed (its label is the
+ * longest common prefix of its range) and each child table of the kind that fits its
+ * final size; no edge is ever split and no table ever changes kind. The subtrees under different
+ * first letters are built in parallel, each one with its own label arena; the
+ * arenas are then concatenated.
+ * </p>
+ */
+public final class BulkLoader {
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private BulkLoader() {
+    }
+
+    /**
+     * Reads a lexicon (one word per line) and builds a trie that contains each
+     * trimmed, lowercased, non-empty line.
+     *
+     * @param file The lexicon file.
+     * @return The new trie.
+     * @throws IOException If the file cannot be read.
+     */
+    public static CompressedTrie load(Path file) throws IOException {
+        return build(readWords(file));
+    }
+
+    /**
+     * Reads a lexicon (one word per line) into its trimmed, lowercased, non-empty lines,
+     * in file order and with the duplicates.
+     *
+     * @param file The lexicon file.
+     * @return The words.
+     * @throws IOException If the file cannot be read.
+     */
+    static String[] readWords(Path file) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Lexicon larger than 2 GB: " + file);
+            }
+            map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        // Cut the file into chunks that end right after a line terminator
+        int size = map.limit();
+        int chunks = Math.max(1, Math.min(ForkJoinPool.commonPool().getParallelism() * 4, size / (1 << 16)));
+        int[] bounds = new int[chunks + 1];
+        for (int i = 1; i < chunks; i++) {
+            int b = Math.max(bounds[i - 1], (int) ((long) size * i / chunks));
+            while (b < size && map.get(b) != '\n') b++;
+            bounds[i] = Math.min(size, b + 1);
+        }
+        bounds[chunks] = size;
+
+        String[][] parts = IntStream.range(0, chunks).parallel()
+                .mapToObj(i -> readLines(map, bounds[i], bounds[i + 1]))
+                .toArray(String[][]::new);
+
+        int total = 0;
+        for (String[] part : parts) total += part.length;
+        String[] keys = new String[total];
+        int n = 0;
+        for (String[] part : parts) {
+            System.arraycopy(part, 0, keys, n, part.length);
+            n += part.length;
+        }
+        return keys;
+    }
+
+    /**
+     * Builds a trie from any collection of words. The array is reordered in place.
+     *
+     * @param keys The words; empty strings are ignored and duplicates are allowed.
+     * @return The new trie.
+     */
+    public static CompressedTrie build(String[] keys) {
+        int n = 0;
+        for (String key : keys) {
+            if (!key.isEmpty()) keys[n++] = key; // Drop empty words
+        }
+        String[] aux = new String[n];
+
+        // Root ranges: one per first character, each built as an independent task
+        int[] groups = partition(keys, aux, 0, n, 0);
+        int count = groups[0];
+        CompressedTrie.CompressedTrieNode root = new CompressedTrie.CompressedTrieNode(count);
+        List<SubtreeTask> tasks = new ArrayList<>();
+        for (int g = 0; g < count; g++) {
+            tasks.add(new SubtreeTask(keys, aux, groups[1 + g], groups[2 + g]));
+        }
+        ForkJoinTask.invokeAll(tasks);
+
+        // Concatenate the per-subtree arenas and move each subtree's offsets to its base
+        int labelChars = 0;
+        int[] base = new int[tasks.size()];
+        for (int i = 0; i < tasks.size(); i++) {
+            base[i] = labelChars;
+            labelChars += tasks.get(i).arena.size;
+        }
+        LabelArena labels = new LabelArena(labelChars);
+        for (SubtreeTask t : tasks) {
+            labels.append(t.arena.chars, 0, t.arena.size);
+        }
+        IntStream.range(0, tasks.size()).parallel().forEach(i -> rebase(tasks.get(i).getRawResult(), base[i]));
+        for (SubtreeTask t : tasks) {
+            root.insertEdge(t.getRawResult());
+        }
+
+        return new CompressedTrie(root, labels);
+    }
+
+    /**
+     * Builds the subtree of one first character with its own label arena.
+     */
+    private static final class SubtreeTask extends RecursiveTask<ChildTable.Edge> {
+        private static final long serialVersionUID = 1L;
+
+        /** The words. */
+        private final String[] keys;
+        /** Scratch space as large as {@code keys}. */
+        private final String[] aux;
+        /** First word of the range. */
+        private final int lo;
+        /** End (exclusive) of the range. */
+        private final int hi;
+        /** The labels of this subtree. */
+        final LabelArena arena = new LabelArena();
+
+        /**
+         * @param keys The words.
+         * @param aux  Scratch space as large as {@code keys}.
+         * @param lo   First word of the range.
+         * @param hi   End (exclusive) of the range.
+         */
+        SubtreeTask(String[] keys, String[] aux, int lo, int hi) {
+            this.keys = keys;
+            this.aux = aux;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected ChildTable.Edge compute() {
+            return edge(keys, aux, lo, hi, 0, arena);
+        }
+    }
+
+    /**
+     * Creates the edge (and the subtree below it) for a range of words that share
+     * their first {@code depth} characters and the character at {@code depth}.
+     *
+     * @param keys  The words.
+     * @param aux   Scratch space as large as {@code keys}.
+     * @param lo    First word of the range.
+     * @param hi    End (exclusive) of the range.
+     * @param depth The number of characters consumed by the parent node.
+     * @param arena Receives the label.
+     * @return The edge.
+     */
+    private static ChildTable.Edge edge(String[] keys, String[] aux, int lo, int hi, int depth, LabelArena arena) {
+        // The label runs as long as every word of the range agrees
+        String first = keys[lo];
+        int end = first.length();
+        for (int i = lo + 1; i < hi && end > depth + 1; i++) {
+            String key = keys[i];
+            int j = depth + 1;
+            int max = Math.min(end, key.length());
+            while (j < max && key.charAt(j) == first.charAt(j)) {
+                j++;
+            }
+            end = j;
+        }
+
+        int offset = arena.append(first, depth, end);
+        return new ChildTable.Edge(first.charAt(depth), offset, end - depth, node(keys, aux, lo, hi, end, arena));
+    }
+
+    /**
+     * Creates the node reached after the first {@code depth} characters of a range
+     * of words that all share them.
+     *
+     * @param keys  The words.
+     * @param aux   Scratch space as large as {@code keys}.
+     * @param lo    First word of the range.
+     * @param hi    End (exclusive) of the range.
+     * @param depth The length of the common prefix.
+     * @param arena Receives the labels.
+     * @return The node.
+     */
+    private static CompressedTrie.CompressedTrieNode node(String[] keys, String[] aux, int lo, int hi, int depth, LabelArena arena) {
+        int[] groups = partition(keys, aux, lo, hi, depth);
+        int count = groups[0];
+        CompressedTrie.CompressedTrieNode node = new CompressedTrie.CompressedTrieNode(count);
+        node.isEndOfWord = groups[1] > lo; // Some words (possibly duplicates) end here
+        for (int g = 0; g < count; g++) {
+            node.insertEdge(edge(keys, aux, groups[1 + g], groups[2 + g], depth, arena));
+        }
+        return node;
+    }
+
+    /**
+     * One step of an MSD radix sort: reorders a range of words by their character at
+     * {@code depth}, putting the words that have no such character first.
+     *
+     * @param keys  The words.
+     * @param aux   Scratch space as large as {@code keys}.
+     * @param lo    First word of the range.
+     * @param hi    End (exclusive) of the range.
+     * @param depth The position of the character to group by.
+     * @return {@code {g, b_0, b_1, ..., b_g}}: the number of groups {@code g}, then the
+     * group boundaries in character order (group {@code i} is {@code [b_i, b_i+1)}).
+     * The words in {@code [lo, b_0)} have no character at {@code depth}.
+     */
+    private static int[] partition(String[] keys, String[] aux, int lo, int hi, int depth) {
+        // Find the span of the characters, so the counting array stays small
+        int min = Character.MAX_VALUE;
+        int max = -1;
+        int ended = 0;
+        for (int i = lo; i < hi; i++) {
+            String key = keys[i];
+            if (key.length() == depth) {
+                ended++;
+                continue;
+            }
+            char c = key.charAt(depth);
+            if (c < min) min = c;
+            if (c > max) max = c;
+        }
+        if (max < 0) { // Every word ends here
+            return new int[]{0, hi};
+        }
+
+        // Counting sort on the character at depth; bucket 0 is for the words that ended
+        int[] count = new int[max - min + 2];
+        count[0] = ended;
+        for (int i = lo; i < hi; i++) {
+            String key = keys[i];
+            if (key.length() > depth) count[key.charAt(depth) - min + 1]++;
+        }
+        int groups = 0;
+        for (int b = 1; b < count.length; b++) {
+            if (count[b] > 0) groups++;
+        }
+
+        int[] result = new int[groups + 2];
+        result[0] = groups;
+        result[1] = lo + ended;
+        int[] next = new int[count.length]; // Where the next word of each bucket goes
+        for (int b = 0, pos = lo, g = 2; b < count.length; b++) {
+            next[b] = pos;
+            pos += count[b];
+            if (b > 0 && count[b] > 0) result[g++] = pos; // End of this group
+        }
+
+        for (int i = lo; i < hi; i++) {
+            String key = keys[i];
+            int bucket = key.length() == depth ? 0 : key.charAt(depth) - min + 1;
+            aux[next[bucket]++] = key;
+        }
+        System.arraycopy(aux, lo, keys, lo, hi - lo);
+
+        return result;
+    }
+
+    /**
+     * Adds {@code base} to the label offset of every edge of a subtree.
+     *
+     * @param top  The edge leading to the subtree.
+     * @param base The position of the subtree's arena in the merged arena.
+     */
+    private static void rebase(ChildTable.Edge top, int base) {
+        List<ChildTable.Edge> stack = new ArrayList<>();
+        stack.add(top);
+        while (!stack.isEmpty()) {
+            ChildTable.Edge e = stack.remove(stack.size() - 1);
+            e.offset += base;
+            ChildTable children = e.child.children;
+            for (int i = 0; i < children.slots(); i++) {
+                if (children.slot(i) != null) stack.add(children.slot(i));
+            }
+        }
+    }
+
+    /**
+     * Decodes, trims and lowercases the lines of one chunk of the lexicon, like
+     * {@code BufferedReader.readLine().trim().toLowerCase()} would.
+     *
+     * @param map  The mapped lexicon.
+     * @param from The first byte of the chunk (the start of a line).
+     * @param to   The end (exclusive) of the chunk.
+     * @return The non-empty normalized lines.
+     */
+    private static String[] readLines(MappedByteBuffer map, int from, int to) {
+        List<String> lines = new ArrayList<>();
+        char[] ascii = new char[64];
+        int start = from;
+
+        for (int i = from; i <= to; i++) {
+            byte b = i < to ? map.get(i) : (byte) '\n';
+            if (b != '\n' && b != '\r') continue;
+
+            // Trim: skip control characters and spaces on both sides
+            int s = start;
+            int e = i;
+            while (s < e && (map.get(s) & 0xFF) <= ' ') s++;
+            while (e > s && (map.get(e - 1) & 0xFF) <= ' ') e--;
+            start = i + 1;
+            if (s == e) continue;
+
+            boolean plain = true;
+            if (e - s > ascii.length) ascii = new char[Math.max(e - s, ascii.length * 2)];
+            for (int j = s; j < e && plain; j++) {
+                int c = map.get(j);
+                if (c < 0) {
+                    plain = false; // Not ASCII: let the decoder and String handle it
+                } else {
+                    ascii[j - s] = (char) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+                }
+            }
+
+            if (plain) {
+                lines.add(new String(ascii, 0, e - s));
+            } else {
+                byte[] bytes = new byte[e - s];
+                map.get(s, bytes);
+                lines.add(new String(bytes, StandardCharsets.UTF_8).trim().toLowerCase());
+            }
+        }
+
+        return lines.toArray(new String[0]);
+    }
+}
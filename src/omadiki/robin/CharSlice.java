@@ -0,0 +1,63 @@
+package omadiki.robin;
+
+/**
+ * A mutable, reusable {@link CharSequence} view over a region of a {@code char[]}.
+ * <p>
+ * It lets callers that already hold characters in a buffer (e.g. a tokenizer)
+ * walk the trie without creating a {@code String} for every word.
+ */
+final class CharSlice implements CharSequence {
+    /** The backing buffer. */
+    private char[] buffer;
+    /** Index of the first character of the slice inside {@code buffer}. */
+    private int offset;
+    /** Number of characters in the slice. */
+    private int length;
+
+    /**
+     * Points this slice to a new region of a buffer.
+     *
+     * @param buffer The backing buffer.
+     * @param offset The index of the first character.
+     * @param length The number of characters.
+     * @return This slice.
+     */
+    CharSlice wrap(char[] buffer, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > buffer.length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length + ", buffer " + buffer.length);
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    /**
+     * Drops the reference to the backing buffer.
+     */
+    void clear() {
+        this.buffer = null;
+        this.offset = 0;
+        this.length = 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return buffer[offset + index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, offset, length);
+    }
+}
@@ -0,0 +1,317 @@
+package omadiki.robin;
+
+/**
+ * The outgoing edges of a {@link CompressedTrie} node, keyed by the first character
+ * of their labels.
+ * <p>
+ * Like the nodes of an adaptive radix tree, the table comes in several kinds, each
+ * suited to a range of fan-outs, and a node switches kind as edges are added or removed:
+ * <ul>
+ *     <li>{@link #EMPTY}: the shared table of the leaves, which takes no memory;</li>
+ *     <li>{@code Sorted} of 4 or 16: the keys sorted in a small {@code char[]}, scanned
+ *     until the key is passed;</li>
+ *     <li>{@code Direct}: one slot per letter 'a'..'z', for dense nodes such as the root;</li>
+ *     <li>{@link RobinHoodHashing}: any number of edges with any keys, for the wide
+ *     nodes whose keys are not all lowercase letters.</li>
+ * </ul>
+ * A table only grows to the next kind when it is full, and shrinks at a lower fill,
+ * so a node that gains and loses one edge does not keep switching.
+ * Operations that may change the kind return the table to use from then on.
+ * <p>
+ * The lookup, {@link #get(char)}, is a single final method that tells the kinds apart
+ * by their fields, so the lookups of a trie walk are not virtual calls over four
+ * classes, which the JIT could not inline.
+ * </p>
+ */
+abstract class ChildTable {
+
+    /**
+     * Represents a compressed trie edge, which holds the label
+     * (the compressed path segment) and a pointer to the child trie node.
+     * The label characters live in the {@link LabelArena} of the owning trie;
+     * the edge only keeps its slice of it, plus the first character which is
+     * the key of the edge in its table.
+     */
+    static final class Edge {
+        /** The first character of the label, used as the key. */
+        final char first;
+        /** The offset of the label inside the trie's label arena. */
+        int offset;
+        /** The number of characters of the label. */
+        int length;
+        /** The child node that this edge points to. */
+        CompressedTrie.CompressedTrieNode child;
+
+        /**
+         * Constructs a new Edge with the specified label slice and child node.
+         *
+         * @param first  The first character of the label.
+         * @param offset The offset of the label in the label arena.
+         * @param length The length of the label.
+         * @param child  The destination node in the trie.
+         */
+        Edge(char first, int offset, int length, CompressedTrie.CompressedTrieNode child) {
+            this.first = first;
+            this.offset = offset;
+            this.length = length;
+            this.child = child;
+        }
+    }
+
+    /** The table of the nodes without edges. */
+    static final ChildTable EMPTY = new Sorted(0);
+
+    /** Most edges of a small {@code Sorted} table. */
+    private static final int SMALL = 4;
+    /** Most edges of a {@code Sorted} table. */
+    private static final int MEDIUM = 16;
+    /** A medium table with this many edges or fewer becomes small. */
+    private static final int SMALL_BELOW = 3;
+    /** A wider table with this many edges or fewer becomes {@code Sorted}. */
+    private static final int MEDIUM_BELOW = 12;
+
+    /** The keys of a {@code Sorted} table, ascending; {@code null} for the other kinds. */
+    char[] keys;
+    /**
+     * The edges: in the order of the keys for a {@code Sorted} table, by letter for a
+     * {@code Direct} one; {@code null} for a hash table.
+     */
+    Edge[] edges;
+    /** The number of edges. */
+    int size;
+
+    /**
+     * Returns an empty table of the kind that fits a number of edges.
+     *
+     * @param edges The number of edges that will be added.
+     * @return The table.
+     */
+    static ChildTable withCapacity(int edges) {
+        if (edges == 0) return EMPTY;
+        if (edges <= SMALL) return new Sorted(SMALL);
+        if (edges <= MEDIUM) return new Sorted(MEDIUM);
+        return new Direct();
+    }
+
+    /**
+     * Finds the edge whose label starts with a character.
+     *
+     * @param c The first character of the label.
+     * @return The edge, or {@code null} if there is none.
+     */
+    final Edge get(char c) {
+        char[] keys = this.keys;
+        if (keys != null) { // Sorted: scan until the key is passed
+            for (int i = 0; i < size; i++) {
+                char k = keys[i];
+                if (k >= c) return k == c ? edges[i] : null;
+            }
+            return null;
+        }
+        if (edges != null) { // Direct
+            int i = c - 'a';
+            return i >= 0 && i < 26 ? edges[i] : null;
+        }
+        return ((RobinHoodHashing) this).search(c);
+    }
+
+    /**
+     * Adds an edge. No edge with the same first character may be in the table.
+     *
+     * @param edge The edge.
+     * @return The table holding the edges from now on; it may be a new one of another kind.
+     */
+    abstract ChildTable put(Edge edge);
+
+    /**
+     * Removes the edge whose label starts with a character.
+     *
+     * @param c The first character of the label.
+     * @return The table holding the edges from now on; it may be a new one of another kind.
+     */
+    abstract ChildTable remove(char c);
+
+    /**
+     * @return The number of edges.
+     */
+    final int size() {
+        return size;
+    }
+
+    /**
+     * @return The number of slots, for iterating with {@link #slot(int)}.
+     */
+    abstract int slots();
+
+    /**
+     * @param i A slot, between 0 and {@link #slots()} (exclusive).
+     * @return The edge in the slot, or {@code null} if the slot is empty.
+     */
+    abstract Edge slot(int i);
+
+    /**
+     * @return An estimate of the bytes taken by the table itself, without its edges.
+     */
+    abstract long bytes();
+
+    /**
+     * Copies the edges into an array, in slot order.
+     *
+     * @param out The array to fill; it must have room for {@link #size()} edges.
+     * @return The number of edges copied.
+     */
+    int edges(Edge[] out) {
+        int n = 0;
+        for (int i = 0; i < slots(); i++) {
+            Edge e = slot(i);
+            if (e != null) out[n++] = e;
+        }
+        return n;
+    }
+
+    /**
+     * Moves the edges of this table into another one.
+     *
+     * @param table The table to fill.
+     * @return The filled table.
+     */
+    ChildTable copyTo(ChildTable table) {
+        for (int i = 0; i < slots(); i++) {
+            Edge e = slot(i);
+            if (e != null) table = table.put(e);
+        }
+        return table;
+    }
+
+    /**
+     * @param c A character.
+     * @return {@code true} if it is a lowercase ASCII letter.
+     */
+    static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    /**
+     * Lets a {@link RobinHoodHashing} table that lost edges become {@code Sorted}.
+     *
+     * @param table The hash table after a removal.
+     * @return The table to keep using.
+     */
+    static ChildTable shrink(RobinHoodHashing table) {
+        return table.size <= MEDIUM_BELOW ? table.copyTo(new Sorted(MEDIUM)) : table;
+    }
+
+    /**
+     * Up to 4 or 16 edges, sorted by key; with room for none, the shared {@link #EMPTY} table.
+     */
+    private static final class Sorted extends ChildTable {
+
+        /**
+         * @param capacity The most edges the table can hold.
+         */
+        Sorted(int capacity) {
+            keys = new char[capacity];
+            edges = new Edge[capacity];
+        }
+
+        @Override
+        ChildTable put(Edge edge) {
+            if (size == keys.length) { // Full: move to the next kind
+                if (size < SMALL) return new Sorted(SMALL).put(edge);
+                if (size < MEDIUM) return copyTo(new Sorted(MEDIUM)).put(edge);
+                boolean letters = isLetter(edge.first);
+                for (int i = 0; i < size && letters; i++) {
+                    letters = isLetter(keys[i]);
+                }
+                return copyTo(letters ? new Direct() : new RobinHoodHashing(MEDIUM + 1)).put(edge);
+            }
+            int i = size;
+            while (i > 0 && keys[i - 1] > edge.first) {
+                keys[i] = keys[i - 1];
+                edges[i] = edges[i - 1];
+                i--;
+            }
+            keys[i] = edge.first;
+            edges[i] = edge;
+            size++;
+            return this;
+        }
+
+        @Override
+        ChildTable remove(char c) {
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == c) {
+                    size--;
+                    System.arraycopy(keys, i + 1, keys, i, size - i);
+                    System.arraycopy(edges, i + 1, edges, i, size - i);
+                    edges[size] = null;
+                    break;
+                }
+            }
+            if (size == 0) return EMPTY;
+            return keys.length > SMALL && size <= SMALL_BELOW ? copyTo(new Sorted(SMALL)) : this;
+        }
+
+        @Override
+        int slots() {
+            return size;
+        }
+
+        @Override
+        Edge slot(int i) {
+            return edges[i];
+        }
+
+        @Override
+        long bytes() {
+            return this == EMPTY ? 0 : 16 + (16 + 2L * keys.length) + (16 + 4L * keys.length); // EMPTY is shared
+        }
+    }
+
+    /**
+     * One slot per lowercase letter, indexed by the key.
+     */
+    private static final class Direct extends ChildTable {
+
+        /**
+         * Creates an empty table.
+         */
+        Direct() {
+            edges = new Edge[26];
+        }
+
+        @Override
+        ChildTable put(Edge edge) {
+            if (!isLetter(edge.first)) {
+                return copyTo(new RobinHoodHashing(size + 1)).put(edge);
+            }
+            edges[edge.first - 'a'] = edge;
+            size++;
+            return this;
+        }
+
+        @Override
+        ChildTable remove(char c) {
+            if (isLetter(c) && edges[c - 'a'] != null) {
+                edges[c - 'a'] = null;
+                size--;
+            }
+            return size <= MEDIUM_BELOW ? copyTo(new Sorted(MEDIUM)) : this;
+        }
+
+        @Override
+        int slots() {
+            return 26;
+        }
+
+        @Override
+        Edge slot(int i) {
+            return edges[i];
+        }
+
+        @Override
+        long bytes() {
+            return 16 + (16 + 4 * 26);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package omadiki.robin;
+
+import omadiki.DictionaryWord;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy, alphabetical iteration over the words of a {@link CompressedTrie} that start
+ * with a prefix.
+ * <p>
+ * The cursor keeps an explicit traversal stack with one frame per node on the path to
+ * the current word; every frame holds the live edges of its node sorted by their first
+ * character, so the words come out in alphabetical order. The current word is built in
+ * a single reusable {@code char[]}: entering an edge appends its label, and going back
+ * up simply forgets the characters past the parent's length. Nothing is done ahead of
+ * the caller, so a consumer that stops after a page pays only for that page.
+ * </p>
+ * <p>
+ * {@link #token()} returns a continuation token, and
+ * {@link CompressedTrie#completions(String, String)} resumes right after it: the
+ * traversal descends along the token once and rebuilds the stack, instead of walking
+ * again over every word before it. Tokens are plain words, so they stay valid when the
+ * trie changes between two pages; a single cursor, however, must not be used while the
+ * trie is modified.
+ * </p>
+ */
+public final class CompletionCursor implements Iterator<DictionaryWord> {
+
+    /**
+     * One level of the traversal stack.
+     */
+    private static final class Frame {
+        /** The node of this level. */
+        CompressedTrie.CompressedTrieNode node;
+        /** The live edges of the node, sorted by their first character. */
+        ChildTable.Edge[] edges = new ChildTable.Edge[4];
+        /** The number of entries of {@code edges}. */
+        int count;
+        /** The next edge to enter. */
+        int next;
+        /** Length of the word at the node. */
+        int length;
+        /** Whether the word of the node itself has been returned or skipped. */
+        boolean visited;
+    }
+
+    /** The trie; its label arena is looked up on every step, as deletions may replace it. */
+    private final CompressedTrie trie;
+    /** The traversal stack. */
+    private Frame[] stack = new Frame[16];
+    /** The number of frames in use. */
+    private int depth;
+    /** The characters of the current word. */
+    private char[] word;
+    /** The length of the current word. */
+    private int length;
+    /** The node of the current word, or {@code null} before the first and after the last one. */
+    private CompressedTrie.CompressedTrieNode current;
+    /** The number of words not returned yet. */
+    private int remaining;
+    /** The view returned by {@link #word()}. */
+    private final CharSlice slice = new CharSlice();
+
+    /**
+     * Creates a cursor over the subtree of {@code start}, positioned before its first
+     * word that is greater than {@code after}.
+     *
+     * @param trie  The trie.
+     * @param start The node of the prefix, or {@code null} if no word has the prefix.
+     * @param base  The word leading to {@code start}.
+     * @param after Only the words greater than this are returned; {@code null} for all of them.
+     */
+    CompletionCursor(CompressedTrie trie, CompressedTrie.CompressedTrieNode start, String base, String after) {
+        this.trie = trie;
+        this.word = Arrays.copyOf(base.toCharArray(), Math.max(16, base.length() * 2));
+        if (start == null) {
+            return;
+        }
+
+        push(start, base.length());
+        remaining = start.words;
+        if (after == null) {
+            return;
+        }
+
+        int common = 0;
+        int min = Math.min(base.length(), after.length());
+        while (common < min && base.charAt(common) == after.charAt(common)) {
+            common++;
+        }
+        if (common == base.length()) {
+            remaining -= seek(after, base.length());
+        } else if (common < after.length() && after.charAt(common) > base.charAt(common)) {
+            depth = 0; // Every word of the subtree comes before the token
+            remaining = 0;
+        }
+    }
+
+    /**
+     * Moves the stack from the start node down along {@code after}, so that the
+     * traversal continues with the first word greater than it.
+     *
+     * @param after The word to resume after; it starts with the word of the start node.
+     * @param pos   The length of the word of the start node.
+     * @return The number of words of the subtree that are not greater than {@code after}.
+     */
+    private int seek(String after, int pos) {
+        int skipped = 0;
+        LabelArena labels = trie.labels;
+
+        while (true) {
+            Frame f = stack[depth - 1];
+            f.visited = true; // The word of the node is a prefix of the token, so it is not greater
+            if (f.node.isEndOfWord) {
+                skipped++;
+            }
+            if (pos == after.length()) {
+                return skipped; // All the words below are longer than the token
+            }
+
+            char c = after.charAt(pos);
+            int i = 0;
+            while (i < f.count && f.edges[i].first < c) {
+                skipped += f.edges[i++].child.words;
+            }
+            f.next = i;
+            if (i == f.count || f.edges[i].first != c) {
+                return skipped;
+            }
+
+            ChildTable.Edge e = f.edges[i];
+            int common = labels.common(e.offset, e.length, after, pos, after.length());
+            if (common == e.length) { // The token goes on below the edge
+                f.next = i + 1;
+                push(e.child, enter(e, f.length));
+                pos += e.length;
+            } else {
+                if (pos + common < after.length() && labels.chars[e.offset + common] < after.charAt(pos + common)) {
+                    skipped += e.child.words; // The whole subtree comes before the token
+                    f.next = i + 1;
+                }
+                return skipped;
+            }
+        }
+    }
+
+    /**
+     * Moves to the next word.
+     *
+     * @return {@code true} if there is one, {@code false} if all the words have been returned.
+     */
+    public boolean advance() {
+        while (depth > 0) {
+            Frame f = stack[depth - 1];
+            if (!f.visited) {
+                f.visited = true;
+                if (f.node.isEndOfWord) {
+                    length = f.length;
+                    current = f.node;
+                    remaining--;
+                    return true;
+                }
+            }
+            if (f.next == f.count) { // All edges visited: leave the node
+                depth--;
+                continue;
+            }
+            ChildTable.Edge e = f.edges[f.next++];
+            if (e.child.words > 0) {
+                push(e.child, enter(e, f.length));
+            }
+        }
+        current = null;
+        return false;
+    }
+
+    /**
+     * @return The current word. The view is reused, so it is only valid until the next move.
+     * @throws IllegalStateException If the cursor is not on a word.
+     */
+    public CharSequence word() {
+        checkCurrent();
+        return slice.wrap(word, 0, length);
+    }
+
+    /**
+     * @return The importance of the current word.
+     * @throws IllegalStateException If the cursor is not on a word.
+     */
+    public int importance() {
+        checkCurrent();
+        return current.importance;
+    }
+
+    /**
+     * Returns the continuation token of the cursor: passing it to
+     * {@link CompressedTrie#completions(String, String)} with the same prefix returns
+     * a cursor over the words after the current one.
+     *
+     * @return The token.
+     * @throws IllegalStateException If the cursor is not on a word.
+     */
+    public String token() {
+        checkCurrent();
+        return new String(word, 0, length);
+    }
+
+    /**
+     * @return {@code true} if there are more words.
+     */
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    /**
+     * Moves to the next word and returns it with its importance.
+     *
+     * @return The word.
+     * @throws NoSuchElementException If all the words have been returned.
+     */
+    @Override
+    public DictionaryWord next() {
+        if (!hasNext() || !advance()) {
+            throw new NoSuchElementException();
+        }
+        return new DictionaryWord(new String(word, 0, length), current.importance);
+    }
+
+    /**
+     * Returns the remaining words as a sequential, ordered stream, which moves this cursor
+     * as it is consumed.
+     *
+     * @return The stream.
+     */
+    public Stream<DictionaryWord> stream() {
+        return StreamSupport.stream(Spliterators.spliterator(this, remaining,
+                Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * @throws IllegalStateException If the cursor is not on a word.
+     */
+    private void checkCurrent() {
+        if (current == null) {
+            throw new IllegalStateException("The cursor is not on a word");
+        }
+    }
+
+    /**
+     * Appends the label of an edge to the word buffer.
+     *
+     * @param edge   The edge being entered.
+     * @param length The length of the word at the parent of the edge.
+     * @return The length of the word at the child.
+     */
+    private int enter(ChildTable.Edge edge, int length) {
+        int end = length + edge.length;
+        if (end > word.length) {
+            word = Arrays.copyOf(word, Math.max(word.length * 2, end));
+        }
+        System.arraycopy(trie.labels.chars, edge.offset, word, length, edge.length);
+        return end;
+    }
+
+    /**
+     * Pushes a frame for a node, with its live edges in alphabetical order.
+     *
+     * @param node   The node.
+     * @param length The length of the word at the node.
+     */
+    private void push(CompressedTrie.CompressedTrieNode node, int length) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        if (stack[depth] == null) {
+            stack[depth] = new Frame();
+        }
+        Frame f = stack[depth++];
+        f.node = node;
+        f.next = 0;
+        f.length = length;
+        f.visited = false;
+        if (f.edges.length < node.children.size()) {
+            f.edges = new ChildTable.Edge[node.children.size()];
+        }
+        f.count = node.children.edges(f.edges);
+
+        // Insertion sort: a node has at most one edge per letter
+        for (int i = 1; i < f.count; i++) {
+            ChildTable.Edge e = f.edges[i];
+            int j = i - 1;
+            while (j >= 0 && f.edges[j].first > e.first) {
+                f.edges[j + 1] = f.edges[j];
+                j--;
+            }
+            f.edges[j + 1] = e;
+        }
+    }
+
+    /**
+     * Pages through the words of a prefix with continuation tokens, checks the pages
+     * against the sorted output of {@code getWordsWithPrefix}, and compares the time of
+     * the first page with that of collecting every word.
+     *
+     * @param args The dictionary file, the prefix and, optionally, the page size (default 50).
+     * @throws IOException If the dictionary cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        CompressedTrie trie = BulkLoader.load(Path.of(args[0]));
+        String prefix = args[1];
+        int page = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+
+        DictionaryWord[] all = trie.getWordsWithPrefix(prefix, -1).getSorted();
+        String[] expected = new String[all.length];
+        for (int i = 0; i < all.length; i++) {
+            expected[i] = all[i].getWord();
+        }
+        Arrays.sort(expected);
+
+        int n = 0;
+        String token = null;
+        do {
+            CompletionCursor cursor = trie.completions(prefix, token);
+            for (int i = 0; i < page && cursor.advance(); i++) {
+                if (!cursor.word().toString().equals(expected[n])) {
+                    throw new AssertionError(n + ": " + cursor.word() + " != " + expected[n]);
+                }
+                n++;
+                token = cursor.token();
+            }
+        } while (n < expected.length && n % page == 0);
+        if (n != expected.length) {
+            throw new AssertionError(n + " words paged, " + expected.length + " expected");
+        }
+        System.out.println(n + " words in pages of " + page + ", same as getWordsWithPrefix");
+
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            long firstPage = trie.completions(prefix).stream().limit(page).count();
+            double lazy = (System.nanoTime() - start) / 1e3;
+
+            start = System.nanoTime();
+            trie.getWordsWithPrefix(prefix, -1).getSorted();
+            double eager = (System.nanoTime() - start) / 1e3;
+
+            System.out.printf("first %d words: %.0f us; getWordsWithPrefix(-1): %.0f us%n", firstPage, lazy, eager);
+        }
+    }
+}
@@ -1,68 +1,190 @@
 package omadiki.robin;
 
 import omadiki.DictionaryWord;
+import omadiki.Lexicon;
 import omadiki.MinHeap;
 import omadiki.Pair;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
 /**
  * Implements a Compressed Trie data structure.
  * <p>
  * This structure optimizes a standard Trie by compressing sequences of nodes
  * that have only a single child into a single edge labeled with the full
- * substring. Edge storage and lookups are managed using a
- * {@link RobinHoodHashing} hash table.
+ * substring. Edge storage and lookups are managed by a {@link ChildTable}
+ * per node, whose kind adapts to the fan-out, and the characters of all edge labels
+ * are kept in one shared {@link LabelArena}.
  * </p>
  */
-public class CompressedTrie {
+public class CompressedTrie implements Lexicon {
     /**
      * Node class representing each compressed trie node.
      * <p>
-     * Each node stores its outgoing edges in a hash table ({@link RobinHoodHashing})
-     * and tracks word completion and usage frequency.
+     * Each node stores its outgoing edges in a {@link ChildTable} whose kind follows
+     * the number of edges, and tracks word completion and usage frequency.
      * </p>
      */
     protected static class CompressedTrieNode {
         /**
-         * Hash table storing compressed edges.
+         * Table storing the compressed edges; replaced when the node changes kind.
          */
-        private final RobinHoodHashing hash;
+        ChildTable children;
         /**
          * Marks if this node terminates a word.
          */
-        private boolean isEndOfWord;
+        boolean isEndOfWord;
         /**
          * Usage counter for frequency tracking and prediction.
          */
-        private int importance;
+        int importance;
+        /**
+         * Number of words in the subtree of this node, its own word included.
+         */
+        int words;
+        /**
+         * Sum of the importance of the words in the subtree of this node.
+         */
+        long totalImportance;
+        /**
+         * The highest importance of a word in the subtree of this node, or -1 if it has no words.
+         */
+        int maxImportance;
+        /**
+         * The word that ends at this node; only kept while completions are cached.
+         */
+        String word;
+        /**
+         * The best completions in the subtree of this node, most important first,
+         * at most {@code topK} of them; {@code null} while completions are not cached.
+         */
+        CompressedTrieNode[] top;
 
         /**
          * Constructs a new, empty {@code CompressedTrieNode}.
          */
         public CompressedTrieNode() {
-            hash = new RobinHoodHashing();
+            this(0);
+        }
+
+        /**
+         * Constructs a new, empty {@code CompressedTrieNode} whose table is
+         * already of the kind that fits {@code edges} outgoing edges.
+         *
+         * @param edges The number of edges the node will get.
+         */
+        CompressedTrieNode(int edges) {
+            children = ChildTable.withCapacity(edges);
             isEndOfWord = false;
         }
 
         /**
-         * Inserts a compressed edge into the node's hash table.
+         * Inserts a compressed edge into the node's table.
          *
          * @param edge The compressed edge to insert.
          */
-        public void insertEdge(RobinHoodHashing.Edge edge) {
-            hash.insert(edge);
+        void insertEdge(ChildTable.Edge edge) {
+            children = children.put(edge);
+        }
+
+        /**
+         * Removes the edge whose label starts with a character from the node's table.
+         *
+         * @param first The first character of the label.
+         */
+        void removeEdge(char first) {
+            children = children.remove(first);
         }
     }
 
+    /**
+     * Callback used by the iterative traversal to visit every node of a subtree
+     * together with the word spelled by the path leading to it.
+     */
+    private interface NodeVisitor {
+        /**
+         * Visits a node.
+         *
+         * @param node The node being visited.
+         * @param word The word spelled from the traversal start to {@code node}.
+         *             Only valid for the duration of the call.
+         */
+        void visit(CompressedTrieNode node, StringBuilder word);
+    }
+
+    /**
+     * One level of the explicit traversal stack: the node, the next table slot to
+     * look at, and the length of the word when the node was entered.
+     */
+    private static final class Frame {
+        /** The node of this level. */
+        CompressedTrieNode node;
+        /** The next slot of {@code node.children} to be examined. */
+        int slot;
+        /** Length of the word built up to {@code node}. */
+        int length;
+    }
+
     /**
      * The root node of the compressed trie.
      */
     public CompressedTrieNode root;
 
+    /**
+     * The characters of all edge labels. Edges refer to slices of it.
+     */
+    LabelArena labels;
+
+    /**
+     * Reusable view used by the {@code char[]} overloads, so they do not allocate.
+     */
+    private final CharSlice slice = new CharSlice();
+
+    /**
+     * How many completions every node caches; 0 when the cache is off.
+     */
+    private int topK;
+
+    /**
+     * Receives every importance increment of {@code search}; {@code null} when the
+     * counters are not logged.
+     */
+    ImportanceLog log;
+
+    /**
+     * Reusable stack with the nodes on the path of the last traced word, root first.
+     */
+    private CompressedTrieNode[] path = new CompressedTrieNode[16];
+
+    /**
+     * The cached completions of a subtree that has no words.
+     */
+    private static final CompressedTrieNode[] NO_COMPLETIONS = new CompressedTrieNode[0];
+
     /**
      * Constructs an empty {@code CompressedTrie} with an initialized root node.
      */
     public CompressedTrie() {
-        root = new CompressedTrieNode(); // Initialize root node
+        this(new CompressedTrieNode(), new LabelArena()); // Initialize root node
+    }
+
+    /**
+     * Constructs a {@code CompressedTrie} over an already built tree and computes
+     * the subtree word counts and importance sums of its nodes.
+     *
+     * @param root   The root node.
+     * @param labels The arena that holds the labels of all the edges of the tree.
+     */
+    CompressedTrie(CompressedTrieNode root, LabelArena labels) {
+        this.root = root;
+        this.labels = labels;
+        refreshAggregates();
     }
 
     /**
@@ -71,78 +193,510 @@ public class CompressedTrie {
      * If the word is found, its importance (usage counter) is incremented.
      * </p>
      *
-     * @param a The string (word) to search for.
+     * @param a The word to search for.
      * @return {@code true} if the word exists and is marked as an end-of-word,
      * {@code false} otherwise.
      */
-    public boolean search(String a) {
-        return searchRec(this.root, a);
+    @Override
+    public boolean search(CharSequence a) {
+        return search(a, 0, a.length());
     }
 
     /**
-     * Recursive helper for the search operation.
+     * Searches for the word stored in {@code buffer[offset, offset + length)}
+     * without creating a {@code String}.
      *
-     * @param node The current node to search from.
-     * @param word The remaining portion of the word to match.
-     * @return {@code true} if the word is found, {@code false} otherwise.
+     * @param buffer The buffer holding the word.
+     * @param offset The index of the first character of the word.
+     * @param length The number of characters of the word.
+     * @return {@code true} if the word exists and is marked as an end-of-word,
+     * {@code false} otherwise.
      */
-    private boolean searchRec(CompressedTrieNode node, String word) {
-        RobinHoodHashing.Edge parent = node.hash.search(word);
+    public boolean search(char[] buffer, int offset, int length) {
+        boolean found = search(slice.wrap(buffer, offset, length), 0, length);
+        slice.clear();
+        return found;
+    }
 
-        if (parent == null) { // No matching compressed edge
+    /**
+     * Iterative search on the region {@code [offset, offset + length)} of a word.
+     *
+     * @param word   The characters to search for.
+     * @param offset The index of the first character to match.
+     * @param length The number of characters to match.
+     * @return {@code true} if the word is found, {@code false} otherwise.
+     */
+    private boolean search(CharSequence word, int offset, int length) {
+        CompressedTrieNode[] trace = tracePath(length);
+        CompressedTrieNode node = findNode(word, offset, length, trace);
+        if (node == null || !node.isEndOfWord) {
             return false;
-        } else if (parent.label.equals(word)) { // Full match
-            boolean a = parent.child.isEndOfWord;
-            if (a) parent.child.importance++; // Increase usage counter
-            return a;
-        } else { // Partial match
-            String common = word.substring(findCommon(parent.label, word));
-            return searchRec(parent.child, common);
         }
+        node.importance++; // Increase usage counter
+        for (int i = 0; trace[i] != null; i++) {
+            trace[i].totalImportance++;
+            if (trace[i].maxImportance < node.importance) {
+                trace[i].maxImportance = node.importance;
+            }
+        }
+        if (topK > 0) {
+            offerToPath(node);
+        }
+        if (log != null) {
+            log.record(word, offset, length, node.importance);
+        }
+        return true;
     }
 
-    public long getTotalMemory(CompressedTrieNode node) {
-
-        if (node == null) return 0;
+    /**
+     * Searches for a batch of words, such as the words of one document, with the same
+     * effect as calling {@link #search(CharSequence)} on each of them.
+     * <p>
+     * Instead of walking from the root once per word, the batch walks the trie once: at
+     * every node, the words that reached it are grouped by their next character with a
+     * counting sort, and every group looks its edge up once and goes on to the child
+     * together. Repeated words therefore cost one walk, and words with a common prefix
+     * share the lookups of that prefix. The importance of a word grows once by the number
+     * of its repeats, the subtree aggregates of a node once by all the hits below it, and
+     * the importance log, if any, gets one record per distinct word.
+     * </p>
+     *
+     * @param words The words; they may repeat.
+     * @return The hits: bit {@code i} is set if {@code words[i]} is in the trie.
+     */
+    public BitSet searchAll(CharSequence[] words) {
+        Batch batch = new Batch(words, true);
+        batch.visit(root, 0, 0, 0, words.length);
+        return batch.hits;
+    }
 
-        long sum = 0;
+    /**
+     * Counts how many words of a batch are in the trie, without changing their importance.
+     * The batch is walked like in {@link #searchAll(CharSequence[])}.
+     *
+     * @param words The words; they may repeat, and every occurrence is counted.
+     * @return The number of words of the batch that are in the trie.
+     */
+    public int countAll(CharSequence[] words) {
+        Batch batch = new Batch(words, false);
+        batch.visit(root, 0, 0, 0, words.length);
+        return batch.hits.cardinality();
+    }
 
-        // Size of node fields (approximate)
-        sum += 1; // boolean isEndOfWord
-        sum += 4; // importance int
-        sum += 4; // reference to hash object
+    /**
+     * One walk of a batch of words down the trie.
+     */
+    private final class Batch {
+        /** The bucket of the words that end at a node. */
+        private static final int END = 0;
+        /** The bucket of the characters other than 'a'..'z'. */
+        private static final int OTHER = 27;
+        /** Groups up to this size are sorted by insertion, which costs less than counting. */
+        private static final int SMALL_GROUP = 12;
+
+        /** The words. */
+        private final CharSequence[] words;
+        /** Whether the hits are uses, that increment the importance. */
+        private final boolean use;
+        /** The hits. */
+        final BitSet hits;
+        /** The positions of the words in the batch, grouped as the walk goes down. */
+        private final int[] order;
+        /** Scratch space for the counting sort. */
+        private final int[] aux;
+        /** The nodes on the current path, root first. */
+        private CompressedTrieNode[] nodes = new CompressedTrieNode[16];
+        /** The bucket bounds of the counting sort, one array per level. */
+        private int[][] bounds = new int[16][];
 
-        // Size of RobinHoodHashing table
-        RobinHoodHashing hash = node.hash;
-        if (hash.table != null) {
+        /**
+         * @param words The words.
+         * @param use   Whether the hits are uses, that increment the importance.
+         */
+        Batch(CharSequence[] words, boolean use) {
+            this.words = words;
+            this.use = use;
+            this.hits = new BitSet(words.length);
+            this.order = new int[words.length];
+            this.aux = new int[words.length];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+        }
 
-            sum += 12; // capacity, size, maxProbeLen
-            sum += 8; // table reference
+        /**
+         * Walks the subtree of a node with the words that reached it.
+         *
+         * @param node  The node.
+         * @param level The number of nodes above it.
+         * @param depth The length of the words at the node.
+         * @param lo    The first of its words in {@code order}.
+         * @param hi    The end (exclusive) of its words in {@code order}.
+         * @return The number of hits in the subtree.
+         */
+        int visit(CompressedTrieNode node, int level, int depth, int lo, int hi) {
+            if (level == nodes.length) {
+                nodes = Arrays.copyOf(nodes, level * 2);
+                bounds = Arrays.copyOf(bounds, level * 2);
+            }
+            nodes[level] = node;
+            if (hi - lo == 1) {
+                return descend(node, level, depth, lo);
+            }
 
-            for (int i = 0; i < hash.capacity; i++) {
-                var edge = hash.table[i];
+            if (hi - lo <= SMALL_GROUP) {
+                insertionSort(lo, hi, depth);
+            } else {
+                countingSort(level, lo, hi, depth);
+            }
 
-                sum += 4; // edge pointer in table
-                sum += hash.capacity * 4; // size of hash table
+            // The words that end here come first, then one run per next character
+            int ends = lo;
+            while (ends < hi && words[order[ends]].length() == depth) {
+                ends++;
+            }
+            int added = 0;
+            if (ends > lo && node.isEndOfWord) {
+                added += hit(node, level, depth, lo, ends);
+            }
+            for (int from = ends; from < hi; ) {
+                char c = words[order[from]].charAt(depth);
+                int to = from + 1;
+                while (to < hi && words[order[to]].charAt(depth) == c) {
+                    to++;
+                }
 
+                ChildTable.Edge edge = node.children.get(c);
                 if (edge != null) {
-                    sum += 4; // reference to String
-                    sum += 1; // occupied field
-                    sum += 4; // pointer to child
+                    int matched = from;
+                    for (int i = from; i < to; i++) { // Keep the words that follow the whole label
+                        CharSequence w = words[order[i]];
+                        if (w.length() - depth >= edge.length && labelMatches(edge, w, depth)) {
+                            order[matched++] = order[i];
+                        }
+                    }
+                    if (matched > from) {
+                        added += visit(edge.child, level + 1, depth + edge.length, from, matched);
+                        if (edge.child.maxImportance > node.maxImportance) {
+                            node.maxImportance = edge.child.maxImportance;
+                        }
+                    }
+                }
+                from = to;
+            }
+            if (use) {
+                node.totalImportance += added;
+            }
+            return added;
+        }
+
+        /**
+         * Walks down with a single word, like {@code search} does, from a node of its path.
+         *
+         * @param node  The node.
+         * @param level The number of nodes above it.
+         * @param depth The length of the word at the node.
+         * @param at    The position of the word in {@code order}.
+         * @return 1 if the word is in the trie, 0 otherwise.
+         */
+        private int descend(CompressedTrieNode node, int level, int depth, int at) {
+            CharSequence w = words[order[at]];
+            int top = level;
+            while (depth < w.length()) {
+                ChildTable.Edge edge = node.children.get(w.charAt(depth));
+                if (edge == null || w.length() - depth < edge.length || !labelMatches(edge, w, depth)) {
+                    return 0;
+                }
+                depth += edge.length;
+                node = edge.child;
+                if (++top == nodes.length) {
+                    nodes = Arrays.copyOf(nodes, top * 2);
+                }
+                nodes[top] = node;
+            }
+            if (!node.isEndOfWord) {
+                return 0;
+            }
+
+            hit(node, top, depth, at, at + 1);
+            for (int i = top; use && i >= level; i--) { // The path below the caller's node
+                nodes[i].totalImportance++;
+                if (nodes[i].maxImportance < node.importance) {
+                    nodes[i].maxImportance = node.importance;
+                }
+            }
+            return 1;
+        }
+
+        /**
+         * Records the hits of a group of equal words that end at a node: increments its
+         * importance by their number and offers it to the completion caches of its path.
+         * The aggregates of the path are left to the caller.
+         *
+         * @param node  The node of the word.
+         * @param level The number of nodes above it.
+         * @param depth The length of the word.
+         * @param from  The first of the words in {@code order}.
+         * @param to    The end (exclusive) of the words in {@code order}.
+         * @return The number of words.
+         */
+        private int hit(CompressedTrieNode node, int level, int depth, int from, int to) {
+            for (int i = from; i < to; i++) {
+                hits.set(order[i]);
+            }
+            if (!use) {
+                return to - from;
+            }
+            node.importance += to - from;
+            if (node.importance > node.maxImportance) {
+                node.maxImportance = node.importance;
+            }
+            for (int i = level; i >= 0 && topK > 0; i--) {
+                // Like offerToPath: a word that misses a subtree's top K misses the bigger ones too
+                if (!offer(nodes[i], node)) break;
+            }
+            if (log != null) {
+                log.record(words[order[from]], 0, depth, node.importance);
+            }
+            return to - from;
+        }
+
+        /**
+         * Sorts a range of {@code order} by the character of its words at a position,
+         * the words that end before it first, with a counting sort over 'a'..'z'.
+         *
+         * @param level The number of nodes above the words' node.
+         * @param lo    The first position of the range.
+         * @param hi    The end (exclusive) of the range.
+         * @param depth The position of the character.
+         */
+        private void countingSort(int level, int lo, int hi, int depth) {
+            int[] at = bounds[level]; // Bucket b ends up in [lo + at[b], lo + at[b + 1])
+            if (at == null) {
+                at = bounds[level] = new int[OTHER + 2];
+            }
+            Arrays.fill(at, 0);
+            for (int i = lo; i < hi; i++) {
+                at[bucket(words[order[i]], depth) + 1]++;
+            }
+            for (int b = 1; b < at.length; b++) {
+                at[b] += at[b - 1];
+            }
+            int others = lo + at[OTHER];
+            for (int i = lo; i < hi; i++) {
+                aux[lo + at[bucket(words[order[i]], depth)]++] = order[i];
+            }
+            System.arraycopy(aux, lo, order, lo, hi - lo);
+            sortByChar(others, hi, depth);
+        }
+
+        /**
+         * Sorts a small range of {@code order} by the character of its words at a
+         * position, the words that end before it first.
+         *
+         * @param lo    The first position of the range.
+         * @param hi    The end (exclusive) of the range.
+         * @param depth The position of the character.
+         */
+        private void insertionSort(int lo, int hi, int depth) {
+            for (int i = lo + 1; i < hi; i++) {
+                int x = order[i];
+                int key = charAt(words[x], depth);
+                int j = i - 1;
+                while (j >= lo && charAt(words[order[j]], depth) > key) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = x;
+            }
+        }
+
+        /**
+         * @param word  A word.
+         * @param depth A position.
+         * @return The character of the word at the position, or -1 if the word ends before it.
+         */
+        private static int charAt(CharSequence word, int depth) {
+            return depth == word.length() ? -1 : word.charAt(depth);
+        }
+
+        /**
+         * @param word  A word.
+         * @param depth A position.
+         * @return The counting sort bucket of the word's character at the position.
+         */
+        private static int bucket(CharSequence word, int depth) {
+            if (depth == word.length()) {
+                return END;
+            }
+            char c = word.charAt(depth);
+            return ChildTable.isLetter(c) ? c - 'a' + 1 : OTHER;
+        }
+
+        /**
+         * Sorts a range of {@code order} by the character of its words at a position,
+         * for the words whose character there is not a lowercase letter.
+         *
+         * @param from  The first position of the range.
+         * @param to    The end (exclusive) of the range.
+         * @param depth The position of the character.
+         */
+        private void sortByChar(int from, int to, int depth) {
+            if (to - from < 2) {
+                return;
+            }
+            long[] keys = new long[to - from];
+            for (int i = from; i < to; i++) {
+                keys[i - from] = (long) words[order[i]].charAt(depth) << 32 | order[i];
+            }
+            Arrays.sort(keys);
+            for (int i = from; i < to; i++) {
+                order[i] = (int) keys[i - from];
+            }
+        }
+    }
+
+    /**
+     * @param edge An edge whose first character matches.
+     * @param word A word.
+     * @param pos  The position of the edge in the word; the word must have room for the label.
+     * @return {@code true} if the rest of the label matches the word.
+     */
+    private boolean labelMatches(ChildTable.Edge edge, CharSequence word, int pos) {
+        char[] chars = labels.chars;
+        for (int i = 1; i < edge.length; i++) {
+            if (chars[edge.offset + i] != word.charAt(pos + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Looks a word up without changing its importance.
+     *
+     * @param word The word.
+     * @return The node that ends the word, or {@code null} if the word is not in the trie.
+     */
+    CompressedTrieNode findWord(CharSequence word) {
+        CompressedTrieNode node = findNode(word, 0, word.length(), null);
+        return node != null && node.isEndOfWord ? node : null;
+    }
+
+    /**
+     * Walks the trie with an (offset, length) cursor into {@code word} and returns the
+     * node that the whole key leads to. Edge labels must match completely.
+     *
+     * @param word   The key to look up.
+     * @param offset The index of the first character of the key.
+     * @param length The number of characters of the key.
+     * @param trace  If not {@code null}, receives the nodes of the path, root first, followed
+     *               by a {@code null}; it must have room for {@code length + 2} entries.
+     * @return The node reached by the key, or {@code null} if the key is not a path in the trie.
+     */
+    private CompressedTrieNode findNode(CharSequence word, int offset, int length, CompressedTrieNode[] trace) {
+        CompressedTrieNode node = this.root;
+        int pos = offset;
+        int end = offset + length;
+        int depth = 0;
+
+        while (pos < end) {
+            if (trace != null) {
+                trace[depth++] = node;
+            }
+            ChildTable.Edge edge = node.children.get(word.charAt(pos));
+            if (edge == null) { // No matching compressed edge
+                return null;
+            }
+
+            int labelLength = edge.length;
+            if (end - pos < labelLength) { // The key ends inside this edge
+                return null;
+            }
+            char[] chars = labels.chars;
+            for (int i = 1; i < labelLength; i++) {
+                if (chars[edge.offset + i] != word.charAt(pos + i)) {
+                    return null;
+                }
+            }
+
+            pos += labelLength;
+            node = edge.child;
+        }
+
+        if (trace != null) {
+            trace[depth++] = node;
+            trace[depth] = null;
+        }
+        return node;
+    }
+
+    /**
+     * Makes sure the path stack can hold the path of a word.
+     *
+     * @param length The length of the word.
+     * @return The path stack.
+     */
+    private CompressedTrieNode[] tracePath(int length) {
+        if (path.length < length + 2) {
+            path = new CompressedTrieNode[length + 2];
+        }
+        return path;
+    }
 
-                    String label = edge.label;
-                    // String fields: byte[] value ref (4) + int hash (4) + byte coder (1)
-                    sum += 4 + 4 + 1;
+    /**
+     * Estimates the memory used by the subtree starting at {@code node}.
+     *
+     * @param node The root of the subtree.
+     * @return The estimated number of bytes.
+     */
+    public long getTotalMemory(CompressedTrieNode node) {
 
-                    // String internal byte array (label data)
-                    // Array length field (4) + N * C (characters * bytes-per-char)
-                    int bytesPerChar = label.length() > 0 && label.charAt(0) < 256 ? 1 : 2; // Simple heuristic for java
+        if (node == null) return 0;
 
-                    // Add size of the character array object
-                    sum += 4 + ((long)label.length() * bytesPerChar);
+        long sum = 0;
+        if (node == root) {
+            // Label arena: array header (16) + every allocated character (2 bytes each)
+            sum += 4 + 16 + (long) labels.chars.length * 2;
+        }
+        ArrayDeque<CompressedTrieNode> stack = new ArrayDeque<>();
+        stack.push(node);
+
+        while (!stack.isEmpty()) {
+            node = stack.pop();
+
+            // Size of node fields (approximate)
+            sum += 1; // boolean isEndOfWord
+            sum += 4; // importance int
+            sum += 4; // reference to the child table
+            sum += 4 + 8 + 4; // subtree word count, importance sum and maximum
+            sum += 4 + 4; // references to the cached word and completions
+            if (node.top != null && node.top.length > 0) {
+                sum += 16 + 4L * node.top.length; // completion array
+            }
+            if (node.word != null) {
+                sum += 24 + 16 + node.word.length(); // String and its Latin-1 bytes
+            }
 
-                    // Recursive child memory
-                    sum += getTotalMemory(edge.child);
+            // Size of the child table, which depends on its kind
+            ChildTable children = node.children;
+            sum += children.bytes();
+
+            for (int i = 0; i < children.slots(); i++) {
+                var edge = children.slot(i);
+
+                if (edge != null) {
+                    sum += 2; // first char
+                    sum += 4 + 4; // label offset and length in the arena
+                    sum += 4; // pointer to child
+
+                    if (node != root) {
+                        // Label characters, when measuring a subtree without the arena
+                        sum += (long) edge.length * 2;
+                    }
+
+                    // Child memory
+                    if (edge.child != null) stack.push(edge.child);
                 }
             }
         }
@@ -156,92 +710,432 @@ public class CompressedTrie {
      *
      * @param word The word to insert.
      */
-    public void insert(String word) {
-        if (word.isEmpty())
+    public void insert(CharSequence word) {
+        if (word.length() == 0) {
             System.err.println("Tried to insert empty word in CompressedTrie!");
-        insertRec(this.root, word);
+            return;
+        }
+        CompressedTrieNode added = insert(word, 0, word.length());
+        if (added != null) {
+            wordAdded(added, word, 0, word.length());
+        }
     }
 
     /**
-     * Recursive helper for the insertion operation, handling edge splitting.
+     * Inserts the word stored in {@code buffer[offset, offset + length)}.
      *
-     * @param node The current node to insert from.
-     * @param word The remaining portion of the word to insert.
+     * @param buffer The buffer holding the word.
+     * @param offset The index of the first character of the word.
+     * @param length The number of characters of the word.
      */
-    private void insertRec(CompressedTrieNode node, String word) {
-        RobinHoodHashing.Edge parent = node.hash.search(word);
-
-        if (parent == null) { // No edge: create new
-            CompressedTrieNode a = new CompressedTrieNode();
-            a.isEndOfWord = true;
-            RobinHoodHashing.Edge e = new RobinHoodHashing.Edge(word, a);
-            node.insertEdge(e);
+    public void insert(char[] buffer, int offset, int length) {
+        if (length == 0) {
+            System.err.println("Tried to insert empty word in CompressedTrie!");
             return;
         }
+        CompressedTrieNode added = insert(slice.wrap(buffer, offset, length), 0, length);
+        if (added != null) {
+            wordAdded(added, slice, 0, length);
+        }
+        slice.clear();
+    }
 
-        if (parent.label.equals(word)) { // Exact match
-            parent.child.isEndOfWord = true;
-            return;
+    /**
+     * Iterative insertion on the region {@code [offset, offset + length)} of a word,
+     * handling edge splitting.
+     *
+     * @param word   The characters to insert.
+     * @param offset The index of the first character to insert.
+     * @param length The number of characters to insert.
+     * @return The node of the word if it was added, {@code null} if it was already there.
+     */
+    private CompressedTrieNode insert(CharSequence word, int offset, int length) {
+        CompressedTrieNode node = this.root;
+        int pos = offset;
+        int end = offset + length;
+
+        while (true) {
+            ChildTable.Edge edge = node.children.get(word.charAt(pos));
+
+            if (edge == null) { // No edge: create new
+                CompressedTrieNode a = new CompressedTrieNode();
+                a.isEndOfWord = true;
+                if (topK > 0) {
+                    a.top = NO_COMPLETIONS;
+                }
+                int start = labels.append(word, pos, end);
+                node.insertEdge(new ChildTable.Edge(word.charAt(pos), start, end - pos, a));
+                return a;
+            }
+
+            int common = labels.common(edge.offset, edge.length, word, pos, end);
+
+            if (common < edge.length) { // Split edge: keep the common part, move the rest below
+                CompressedTrieNode middle = new CompressedTrieNode();
+                middle.insertEdge(new ChildTable.Edge(labels.chars[edge.offset + common],
+                        edge.offset + common, edge.length - common, edge.child));
+                middle.words = edge.child.words; // Same words below as the old child
+                middle.totalImportance = edge.child.totalImportance;
+                middle.maxImportance = edge.child.maxImportance;
+                if (topK > 0) {
+                    middle.top = edge.child.top.clone();
+                }
+                edge.length = common; // Both halves still point into the same arena characters
+                edge.child = middle;
+            }
+
+            pos += common;
+            node = edge.child;
+            if (pos == end) { // Word ends at this node
+                if (node.isEndOfWord) {
+                    return null;
+                }
+                node.isEndOfWord = true;
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Deletes a word from the compressed trie and gives its memory back.
+     * <p>
+     * The end-of-word flag of the word's node is cleared and its importance reset. If
+     * the node has no further edges, the edge leading to it is removed from the table
+     * of its parent (which may shrink to a smaller kind), and a parent that is left
+     * with a single edge and no word of its own is merged into the edge above it.
+     * A node that keeps exactly one edge is merged the same way, so every node
+     * except the root again either ends a word or branches, as after inserting the
+     * remaining words alone.
+     * </p>
+     *
+     * @param word The word to delete.
+     * @return {@code true} if the word was successfully found and deleted,
+     * {@code false} otherwise.
+     */
+    public boolean delete(CharSequence word) {
+        CompressedTrieNode node = this.root;
+        CompressedTrieNode parent = null;
+        ChildTable.Edge edge = null;
+        ChildTable.Edge parentEdge = null;
+        int pos = 0;
+        int end = word.length();
+
+        while (pos < end) {
+            parentEdge = edge;
+            parent = node;
+            edge = node.children.get(word.charAt(pos));
+            if (edge == null) {
+                return false; // Word does not exist
+            }
+
+            if (end - pos < edge.length || labels.common(edge.offset, edge.length, word, pos, end) != edge.length) {
+                return false;
+            }
+            pos += edge.length;
+            node = edge.child;
+        }
+
+        if (edge == null || !node.isEndOfWord)
+            return false; // Exists as prefix but not full word
+
+        int importance = node.importance;
+        node.isEndOfWord = false;
+        node.importance = 0;
+        wordRemoved(node, word, importance);
+
+        if (node.children.size() == 0) { // Prune the leaf
+            parent.removeEdge(edge.first);
+            labels.release(edge.length);
+            if (parentEdge != null && !parent.isEndOfWord && parent.children.size() == 1) {
+                merge(parentEdge);
+            }
+        } else if (node.children.size() == 1) {
+            merge(edge);
+        }
+        if (labels.needsCompaction()) {
+            compactLabels();
         }
+        return true;
+    }
 
-        // Find common prefix
-        String common = word.substring(0, findCommon(parent.label, word));
+    /**
+     * Merges the child of an edge, which ends no word and has a single edge left, into
+     * the edge: the edge takes over the concatenated label and the grandchild. The
+     * grandchild's subtree aggregates and caches are those the child had, so nothing
+     * else changes. If the two labels already lie next to each other in the arena (as
+     * after a split), the edge simply grows; otherwise the concatenation is appended
+     * and the old characters are released.
+     *
+     * @param edge The edge whose child is merged.
+     */
+    private void merge(ChildTable.Edge edge) {
+        CompressedTrieNode child = edge.child;
+        ChildTable.Edge next = firstEdge(child);
+
+        if (edge.offset + edge.length != next.offset) {
+            char[] chars = labels.chars;
+            int offset = labels.append(chars, edge.offset, edge.length);
+            labels.append(chars, next.offset, next.length);
+            labels.release(edge.length + next.length);
+            edge.offset = offset;
+        }
+        edge.length += next.length;
+        edge.child = next.child;
+    }
 
-        String wordSubstring = word.substring(common.length());
-        String parentSubstring = parent.label.substring(common.length());
+    /**
+     * @param node A node with at least one edge.
+     * @return Its edge in the first non-empty slot.
+     */
+    private static ChildTable.Edge firstEdge(CompressedTrieNode node) {
+        for (int i = 0; i < node.children.slots(); i++) {
+            if (node.children.slot(i) != null) return node.children.slot(i);
+        }
+        throw new IllegalStateException("Node without edges");
+    }
 
-        if (parent.label.equals(common)) { // Parent edge fully matches prefix
-            insertRec(parent.child, wordSubstring);
-        } else if (word.equals(common)) { // Word fully matches prefix
-            parent.label = common;
-            insertRec(parent.child, parentSubstring);
-        } else { // Split edge
-            parent.label = common;
+    /**
+     * Copies the labels of all live edges into a new, tightly sized arena and
+     * points the edges to their new offsets, dropping the dead characters.
+     */
+    private void compactLabels() {
+        LabelArena old = labels;
+        LabelArena fresh = new LabelArena(old.size - old.dead);
+        ArrayDeque<CompressedTrieNode> stack = new ArrayDeque<>();
+        stack.push(root);
+
+        while (!stack.isEmpty()) {
+            ChildTable children = stack.pop().children;
+            for (int i = 0; i < children.slots(); i++) {
+                ChildTable.Edge e = children.slot(i);
+                if (e == null) continue;
+                e.offset = fresh.append(old.chars, e.offset, e.length);
+                stack.push(e.child);
+            }
+        }
 
-            CompressedTrieNode old = parent.child;
-            parent.child = new CompressedTrieNode();
+        labels = fresh;
+    }
 
-            insertRec(parent.child, parentSubstring); // Reinsert old edge remainder
-            parent.child.hash.search(parentSubstring).child = old;
+    /**
+     * Sets how many completions every node caches. With a cache of {@code k}, calls to
+     * {@link #getWordsWithPrefix(String, int)} with {@code 0 < k' <= k} are answered from
+     * the node of the prefix instead of walking its subtree. The cache is kept up to date
+     * by {@code search}, {@code insert} and {@code delete}.
+     *
+     * @param k The number of completions per node; 0 turns the cache off and frees it.
+     */
+    public void setCompletionCacheSize(int k) {
+        if (k < 0) {
+            throw new IllegalArgumentException("Negative completion cache size: " + k);
+        }
+        topK = k;
+        if (k > 0) {
+            refreshAggregates();
+        } else {
+            walk(root, new StringBuilder(), (node, w) -> {
+                node.top = null;
+                node.word = null;
+            });
+        }
+    }
 
-            insertRec(parent.child, wordSubstring); // Insert new word remainder
+    /**
+     * @return How many completions every node caches; 0 when the cache is off.
+     */
+    public int getCompletionCacheSize() {
+        return topK;
+    }
+
+    /**
+     * Recomputes the subtree aggregates (and the cached completions, if any) after
+     * importance counters or nodes were changed directly, without going through
+     * {@code search}, {@code insert} or {@code delete}.
+     */
+    void refreshAggregates() {
+        ArrayList<CompressedTrieNode> order = new ArrayList<>();
+        walk(root, new StringBuilder(), (node, w) -> {
+            if (topK > 0) {
+                node.word = node.isEndOfWord ? w.toString() : null;
+            }
+            order.add(node);
+        });
+        for (int i = order.size() - 1; i >= 0; i--) { // Pre-order reversed: every child comes before its parent
+            CompressedTrieNode node = order.get(i);
+            node.words = node.isEndOfWord ? 1 : 0;
+            node.totalImportance = node.isEndOfWord ? node.importance : 0;
+            for (int j = 0; j < node.children.slots(); j++) {
+                ChildTable.Edge e = node.children.slot(j);
+                if (e != null) {
+                    node.words += e.child.words;
+                    node.totalImportance += e.child.totalImportance;
+                }
+            }
+            node.maxImportance = maxImportance(node);
+            if (topK > 0) {
+                recomputeCompletions(node);
+            }
         }
     }
 
     /**
-     * Deletes a word from the compressed trie by marking its end-of-word flag
-     * as false.
+     * Computes the highest importance in the subtree of a node from its own word and the
+     * maxima of its children.
      *
-     * @param word The word to delete.
-     * @return {@code true} if the word was successfully found and marked for deletion,
-     * {@code false} otherwise.
+     * @param node The node; the maxima of its children must be up to date.
+     * @return The highest importance, or -1 if the subtree has no words.
      */
-    public boolean delete(String word) {
-        return deleteRec(this.root, word);
+    private static int maxImportance(CompressedTrieNode node) {
+        int max = node.isEndOfWord ? node.importance : -1;
+        for (int i = 0; i < node.children.slots(); i++) {
+            ChildTable.Edge e = node.children.slot(i);
+            if (e != null && e.child.maxImportance > max) {
+                max = e.child.maxImportance;
+            }
+        }
+        return max;
     }
 
     /**
-     * Recursive helper for the delete operation.
+     * Recomputes the cached completions of a node from its own word and the caches of its children.
      *
-     * @param node The current node to search from.
-     * @param word The remaining portion of the word to match.
-     * @return {@code true} if the word was deleted, {@code false} otherwise.
+     * @param node The node; the caches of its children must be up to date.
      */
-    private boolean deleteRec(CompressedTrieNode node, String word) {
-        RobinHoodHashing.Edge parent = node.hash.search(word);
+    private void recomputeCompletions(CompressedTrieNode node) {
+        ArrayList<CompressedTrieNode> candidates = new ArrayList<>();
+        if (node.isEndOfWord) {
+            candidates.add(node);
+        }
+        for (int i = 0; i < node.children.slots(); i++) {
+            ChildTable.Edge e = node.children.slot(i);
+            if (e != null) {
+                candidates.addAll(Arrays.asList(e.child.top));
+            }
+        }
+        candidates.sort((a, b) -> better(a, b) ? -1 : better(b, a) ? 1 : 0);
+        int n = Math.min(topK, candidates.size());
+        node.top = n == 0 ? NO_COMPLETIONS : candidates.subList(0, n).toArray(new CompressedTrieNode[n]);
+    }
 
-        if (parent == null) {
-            return false; // Word does not exist
-        } else if (parent.label.equals(word)) {
-            if (!parent.child.isEndOfWord)
-                return false; // Exists as prefix but not full word
-            parent.child.isEndOfWord = false;
-            parent.occupied = false; // Remove edge from hash
-            return true;
-        } else {
-            String common = word.substring(findCommon(parent.label, word));
-            return deleteRec(parent.child, common);
+    /**
+     * Counts a newly added word in the aggregates and caches of the nodes on its path.
+     *
+     * @param node   The node of the new word.
+     * @param word   The characters of the word.
+     * @param offset The index of the first character of the word.
+     * @param length The number of characters of the word.
+     */
+    private void wordAdded(CompressedTrieNode node, CharSequence word, int offset, int length) {
+        CompressedTrieNode[] trace = tracePath(length);
+        findNode(word, offset, length, trace);
+        for (int i = 0; trace[i] != null; i++) {
+            trace[i].words++;
+            if (trace[i].maxImportance < node.importance) { // An empty subtree had -1
+                trace[i].maxImportance = node.importance;
+            }
+        }
+        if (topK > 0) {
+            node.word = word.subSequence(offset, offset + length).toString();
+            offerToPath(node);
+        }
+    }
+
+    /**
+     * Removes a deleted word from the aggregates and caches of the nodes on its path.
+     *
+     * @param node       The node of the word, already unmarked.
+     * @param word       The word.
+     * @param importance The importance the word had.
+     */
+    private void wordRemoved(CompressedTrieNode node, CharSequence word, int importance) {
+        CompressedTrieNode[] trace = tracePath(word.length());
+        findNode(word, 0, word.length(), trace);
+        int depth = 0;
+        for (; trace[depth] != null; depth++) {
+            trace[depth].words--;
+            trace[depth].totalImportance -= importance;
+        }
+        for (int i = depth - 1; i >= 0; i--) { // The maximum can only shrink; stop where it does not change
+            int max = maxImportance(trace[i]);
+            if (max == trace[i].maxImportance) break;
+            trace[i].maxImportance = max;
+        }
+        if (topK == 0) {
+            return;
+        }
+
+        for (int i = depth - 1; i >= 0; i--) {
+            // If the word is not in this cache, it was beaten by topK words that every ancestor also sees
+            if (!Arrays.asList(path[i].top).contains(node)) break;
+            recomputeCompletions(path[i]);
+        }
+        node.word = null;
+    }
+
+    /**
+     * Offers a word whose importance grew (or that was just added) to the caches of the
+     * nodes on the traced path, from the bottom up.
+     *
+     * @param node The node of the word; it is the last node of the traced path.
+     */
+    private void offerToPath(CompressedTrieNode node) {
+        int depth = 0;
+        while (path[depth] != null) depth++;
+
+        for (int i = depth - 1; i >= 0; i--) {
+            // A word that does not make it into a subtree's top K cannot make it into a bigger subtree's either
+            if (!offer(path[i], node)) break;
+        }
+    }
+
+    /**
+     * Moves a word up in the cache of a node, adding it if it now belongs there.
+     * The importance of the other words in the cache must not have changed.
+     *
+     * @param holder The node whose cache is updated.
+     * @param node   The node of the word.
+     * @return {@code true} if the word is in the cache afterwards.
+     */
+    private boolean offer(CompressedTrieNode holder, CompressedTrieNode node) {
+        CompressedTrieNode[] top = holder.top;
+        int i = top.length - 1;
+        while (i >= 0 && top[i] != node) i--;
+
+        if (i < 0) {
+            if (top.length < topK) {
+                top = Arrays.copyOf(top, top.length + 1);
+                holder.top = top;
+                i = top.length - 1;
+            } else if (top.length > 0 && better(node, top[top.length - 1])) {
+                i = top.length - 1; // Replaces the weakest completion
+            } else {
+                return false;
+            }
+            top[i] = node;
         }
+
+        while (i > 0 && better(top[i], top[i - 1])) {
+            CompressedTrieNode t = top[i];
+            top[i] = top[i - 1];
+            top[i - 1] = t;
+            i--;
+        }
+        return true;
+    }
+
+    /**
+     * Orders completions like {@link DictionaryWord#compare}: by importance and, for equal
+     * importance, by word, the greater one winning, as in a {@link MinHeap} of size K.
+     *
+     * @param a A word node.
+     * @param b Another word node.
+     * @return {@code true} if {@code a} ranks before {@code b}.
+     */
+    private static boolean better(CompressedTrieNode a, CompressedTrieNode b) {
+        if (a.importance != b.importance) {
+            return a.importance > b.importance;
+        }
+        return a.word.compareTo(b.word) > 0;
     }
 
     /**
@@ -251,46 +1145,81 @@ public class CompressedTrie {
      * @param e The {@code CompressedTrie} to print.
      */
     public static void print(CompressedTrie e) {
-        printRec(e.root, "");
+        e.walk(e.root, new StringBuilder(), (node, word) -> {
+            if (node.isEndOfWord) { // Output complete word and importance
+                System.out.println(String.format("%s:%d", word, node.importance));
+            }
+        });
         System.out.println();
     }
 
     /**
-     * Recursive helper to traverse the trie and print words.
+     * Iterative depth-first traversal of the subtree under {@code start}.
+     * The word is built in a single reusable {@link StringBuilder}: each level only
+     * appends its edge label and truncates back to its own length when it is left.
      *
-     * @param e    The current node.
-     * @param word The word built up so far along the path to this node.
+     * @param start   The node to start from.
+     * @param word    The word leading to {@code start}; it is extended in place
+     *                and restored to its original length when the walk ends.
+     * @param visitor The callback invoked for every node of the subtree.
      */
-    private static void printRec(CompressedTrieNode e, String word) {
-        if (e == null) {
+    private void walk(CompressedTrieNode start, StringBuilder word, NodeVisitor visitor) {
+        if (start == null) {
             return;
         }
 
-        if (e.isEndOfWord) { // Output complete word and importance
-            System.out.println(String.format("%s:%d", word, e.importance));
-        }
+        Frame[] stack = new Frame[16];
+        int depth = 0;
+        int base = word.length();
+
+        stack[depth++] = enter(new Frame(), start, word.length());
+        visitor.visit(start, word);
+
+        while (depth > 0) {
+            Frame top = stack[depth - 1];
+            ChildTable children = top.node.children;
 
-        for (int i = 0; i < e.hash.capacity; i++) {
-            if (e.hash.table[i] == null) continue;
-            printRec(e.hash.table[i].child, word + e.hash.table[i].label);
+            // Advance to the next live edge of the current node
+            ChildTable.Edge edge = null;
+            while (top.slot < children.slots() && edge == null) {
+                ChildTable.Edge e = children.slot(top.slot++);
+                if (e != null) edge = e;
+            }
+
+            if (edge == null) { // All edges visited: leave the node
+                depth--;
+                continue;
+            }
+
+            word.setLength(top.length);
+            word.append(labels.chars, edge.offset, edge.length);
+
+            if (depth == stack.length) {
+                stack = Arrays.copyOf(stack, depth * 2);
+            }
+            if (stack[depth] == null) {
+                stack[depth] = new Frame();
+            }
+            enter(stack[depth++], edge.child, word.length());
+            visitor.visit(edge.child, word);
         }
+
+        word.setLength(base);
     }
 
     /**
-     * Finds the length of the common prefix between two strings.
+     * Resets a traversal frame so that it points to a freshly entered node.
      *
-     * @param s1 The first string.
-     * @param s2 The second string.
-     * @return The length of the longest common prefix.
+     * @param frame  The frame to reuse.
+     * @param node   The node being entered.
+     * @param length The word length at {@code node}.
+     * @return The same frame.
      */
-    private static int findCommon(String s1, String s2) {
-        int i = 0;
-        int minLen = Math.min(s1.length(), s2.length());
-        while (i < minLen && s1.charAt(i) == s2.charAt(i)) {
-            i++;
-        }
-
-        return i;
+    private static Frame enter(Frame frame, CompressedTrieNode node, int length) {
+        frame.node = node;
+        frame.slot = 0;
+        frame.length = length;
+        return frame;
     }
 
     /**
@@ -300,30 +1229,85 @@ public class CompressedTrie {
      * it returns a Pair of the children of that node, along with a string that contains all remaining characters from that edge.
      *
      * @param prefix the prefix to search for.
-     * @return Pair of the child node and the remaining string.
+     * @return Pair of the child node and the remaining string. The node is {@code null}
+     * if no word starts with the prefix.
      */
     private Pair<CompressedTrieNode, String> getPrefix(String prefix) {
-        String search = prefix;
-        String remainder = "";
         CompressedTrieNode cur = this.root;
-        RobinHoodHashing.Edge edge = null;
-        while (cur != null) {
-            edge = cur.hash.search(search);
+        int pos = 0;
+        int end = prefix.length();
+
+        while (pos < end) {
+            ChildTable.Edge edge = cur.children.get(prefix.charAt(pos));
             if (edge == null) {
-                cur = null;
-                break;
-            } else {
-                int common = findCommon(search, edge.label);
-                remainder = edge.label.substring(common, edge.label.length());
-                search = search.substring(common, search.length());
-                cur = edge.child;
-                if (search.isEmpty()) {
-                    break; // Prefix fully matched
+                return new Pair<>(null, "");
+            }
+
+            int common = labels.common(edge.offset, edge.length, prefix, pos, end);
+            pos += common;
+            cur = edge.child;
+            if (common < edge.length) {
+                if (pos < end) { // Mismatch inside the edge
+                    return new Pair<>(null, "");
                 }
+                return new Pair<>(cur, labels.toString(edge.offset + common, edge.length - common)); // Prefix ends inside the edge
+            }
+        }
+
+        return new Pair<>(cur, "");
+    }
+
+    /**
+     * Finds the node whose subtree holds exactly the words starting with a prefix,
+     * without allocating. If the prefix ends inside an edge, that is the node below it.
+     *
+     * @param prefix The prefix.
+     * @return The node, or {@code null} if no word starts with the prefix.
+     */
+    private CompressedTrieNode prefixNode(CharSequence prefix) {
+        CompressedTrieNode node = this.root;
+        int pos = 0;
+        int end = prefix.length();
+
+        while (pos < end) {
+            ChildTable.Edge edge = node.children.get(prefix.charAt(pos));
+            if (edge == null) {
+                return null;
+            }
+            int common = labels.common(edge.offset, edge.length, prefix, pos, end);
+            if (common < edge.length && pos + common < end) { // Mismatch inside the edge
+                return null;
             }
+            pos += common;
+            node = edge.child;
         }
 
-        return new Pair<>(cur, remainder);
+        return node;
+    }
+
+    /**
+     * Counts the words that start with a prefix, in time proportional to the prefix length.
+     *
+     * @param prefix The prefix.
+     * @return The number of words.
+     */
+    @Override
+    public int countWordsWithPrefix(String prefix) {
+        CompressedTrieNode node = prefixNode(prefix);
+        return node == null ? 0 : node.words;
+    }
+
+    /**
+     * Computes the average importance of the words that start with a prefix, in time
+     * proportional to the prefix length.
+     *
+     * @param prefix The prefix.
+     * @return The average importance, or 0 if no word starts with the prefix.
+     */
+    @Override
+    public float getAverageFrequency(String prefix) {
+        CompressedTrieNode node = prefixNode(prefix);
+        return node == null || node.words == 0 ? 0 : ((float) node.totalImportance) / node.words;
     }
 
     /**
@@ -331,46 +1315,344 @@ public class CompressedTrie {
      *
      * @param prefix The starting prefix.
      * @param k      The maximum number of words to return. If k is non-positive (-1 in the implementation),
-     *               all words with the prefix are returned.
+     *               all words with the prefix are returned. If k is at most the completion
+     *               cache size, the words are read from the cache of the prefix node, in time
+     *               proportional to the length of the prefix plus k. Otherwise, a positive k
+     *               explores the subtree best-first and stops early.
      * @return A {@link MinHeap} containing {@link DictionaryWord} objects (word and frequency).
      */
+    @Override
     public MinHeap getWordsWithPrefix(String prefix, int k) {
         Pair<CompressedTrieNode, String> cur = getPrefix(prefix);
 
         MinHeap heap = new MinHeap(k);
-        getWordsRec(cur.getLeft(), prefix + cur.getRight(), heap);
+        if (k > 0 && k <= topK) { // Answer from the cache of the prefix node
+            if (cur.getLeft() != null) {
+                CompressedTrieNode[] top = cur.getLeft().top;
+                for (int i = 0; i < Math.min(k, top.length); i++) {
+                    heap.insert(top[i].word, top[i].importance);
+                }
+            }
+            return heap;
+        }
+        if (k > 0) {
+            return bestFirst(cur.getLeft(), prefix + cur.getRight(), heap);
+        }
+        StringBuilder word = new StringBuilder(prefix).append(cur.getRight());
+        walk(cur.getLeft(), word, (node, w) -> {
+            if (node.isEndOfWord && heap.admits(node.importance)) { // Build the string only if it can get in
+                heap.insert(w.toString(), node.importance);
+            }
+        });
 
         return heap;
     }
 
     /**
-     * Recursive helper to traverse the subtree and collect all words into the min-heap.
+     * Returns a lazy cursor over the words starting with the given prefix, in
+     * alphabetical order. Unlike {@link #getWordsWithPrefix(String, int)}, no word is
+     * produced before the caller asks for it.
      *
-     * @param node The current node to traverse from.
-     * @param word The word built up so far (including the prefix).
-     * @param heap The {@link MinHeap} to store the most frequent words.
+     * @param prefix The starting prefix.
+     * @return The cursor, positioned before the first word.
      */
-    private void getWordsRec(CompressedTrieNode node, String word, MinHeap heap) {
-        if (node == null) {
-            return;
+    public CompletionCursor completions(String prefix) {
+        return completions(prefix, null);
+    }
+
+    /**
+     * Returns a lazy cursor over the words starting with the given prefix that come
+     * alphabetically after a continuation token, to serve the next page of a listing.
+     * The cursor is positioned in time proportional to the length of the token.
+     *
+     * @param prefix The starting prefix.
+     * @param after  A token from {@link CompletionCursor#token()}, or any word; {@code null}
+     *               to start from the first word.
+     * @return The cursor, positioned before the first word greater than {@code after}.
+     */
+    public CompletionCursor completions(String prefix, String after) {
+        Pair<CompressedTrieNode, String> cur = getPrefix(prefix);
+        return new CompletionCursor(this, cur.getLeft(), prefix + cur.getRight(), after);
+    }
+
+    /**
+     * A subtree waiting in the best-first frontier: the edge leading to it and the word
+     * before that edge. The full word is only built if the subtree is expanded.
+     */
+    private static final class Candidate {
+        /** The word leading to the parent of the subtree. */
+        final String parent;
+        /** The edge from the parent; {@code null} for the start node. */
+        final ChildTable.Edge edge;
+        /** The root of the subtree. */
+        final CompressedTrieNode node;
+
+        /**
+         * @param parent The word leading to the parent of the subtree.
+         * @param edge   The edge from the parent, or {@code null} for the start node.
+         * @param node   The root of the subtree.
+         */
+        Candidate(String parent, ChildTable.Edge edge, CompressedTrieNode node) {
+            this.parent = parent;
+            this.edge = edge;
+            this.node = node;
         }
-        if (node.isEndOfWord) {
-            heap.insert(new DictionaryWord(word, node.importance));
+    }
+
+    /**
+     * Best-first top-K search: subtrees are expanded in decreasing order of the highest
+     * importance they hold, and the search stops as soon as the K-th best word found
+     * is more important than every subtree not yet expanded.
+     *
+     * @param start The node of the prefix, or {@code null} if no word has the prefix.
+     * @param word  The word leading to {@code start}.
+     * @param heap  The heap of size K that receives the words.
+     * @return The heap.
+     */
+    private MinHeap bestFirst(CompressedTrieNode start, String word, MinHeap heap) {
+        if (start == null || start.maxImportance < 0) {
+            return heap;
+        }
+
+        PriorityQueue<Candidate> frontier =
+                new PriorityQueue<>((a, b) -> Integer.compare(b.node.maxImportance, a.node.maxImportance));
+        frontier.add(new Candidate(word, null, start));
+
+        while (!frontier.isEmpty()) {
+            Candidate cur = frontier.poll();
+            CompressedTrieNode node = cur.node;
+            // Equal importance is not enough to stop: ties are broken by the word
+            if (heap.isFull() && heap.getMinImportance() > node.maxImportance) {
+                break;
+            }
+
+            String w = cur.edge == null ? cur.parent : cur.parent + labels.toString(cur.edge.offset, cur.edge.length);
+            if (node.isEndOfWord) {
+                heap.insert(w, node.importance);
+            }
+            for (int i = 0; i < node.children.slots(); i++) {
+                ChildTable.Edge e = node.children.slot(i);
+                if (e == null || e.child.maxImportance < 0) continue;
+                if (heap.isFull() && heap.getMinImportance() > e.child.maxImportance) continue;
+                frontier.add(new Candidate(w, e, e.child));
+            }
+        }
+
+        return heap;
+    }
+
+    /**
+     * Orders fuzzy matches best first: by edit distance, then by decreasing importance,
+     * then alphabetically.
+     */
+    private static final Comparator<Pair<DictionaryWord, Integer>> FUZZY_ORDER = (a, b) -> {
+        int c = Integer.compare(a.getRight(), b.getRight());
+        if (c == 0) c = Integer.compare(b.getLeft().getImportance(), a.getLeft().getImportance());
+        return c != 0 ? c : a.getLeft().getWord().compareTo(b.getLeft().getWord());
+    };
+
+    /**
+     * Finds the words within a Levenshtein distance of a word, for suggesting
+     * corrections. The importance counters are not changed.
+     * <p>
+     * The trie is walked depth-first, and each character of an edge label extends
+     * the dynamic programming table of the spelled path by one row. A subtree is
+     * skipped as soon as the smallest value of its row is above {@code maxEdits}, since
+     * no longer path can get closer. Once {@code k} matches are found, the bound
+     * tightens to the distance of the worst match. Subtrees that could only tie on
+     * distance and have no word more important than the worst match are skipped too.
+     * </p>
+     *
+     * @param word     The word, possibly misspelled.
+     * @param maxEdits The maximum number of insertions, deletions and substitutions.
+     * @param k        The maximum number of matches; non-positive for all of them.
+     * @return The matches best first, by distance, then decreasing importance, then
+     * alphabetically. Each pairs the word and its importance with its distance.
+     */
+    public List<Pair<DictionaryWord, Integer>> fuzzySearch(CharSequence word, int maxEdits, int k) {
+        if (maxEdits < 0) {
+            throw new IllegalArgumentException("Negative edit distance: " + maxEdits);
+        }
+        Fuzzy fuzzy = new Fuzzy(word, maxEdits, k);
+        fuzzy.visit(root, 0);
+
+        List<Pair<DictionaryWord, Integer>> matches = new ArrayList<>(fuzzy.found);
+        matches.sort(FUZZY_ORDER);
+        return matches;
+    }
+
+    /**
+     * The state of one {@link #fuzzySearch(CharSequence, int, int)}: the rows of the
+     * edit distance table along the current path and the best matches so far.
+     */
+    private final class Fuzzy {
+        /** The characters of the searched word. */
+        private final char[] word;
+        /** The maximum distance of a match. */
+        private final int maxEdits;
+        /** The maximum number of matches; non-positive for all of them. */
+        private final int k;
+        /**
+         * Row {@code d} holds the distances between the first {@code d} characters of
+         * the path and every prefix of the word. No path of a match is longer than
+         * the word plus {@code maxEdits}, and the row after that is only computed to
+         * be rejected.
+         */
+        private final int[][] rows;
+        /** The characters of the current path. */
+        private final char[] spelled;
+        /** The matches so far, worst first, so the worst is dropped when a better one comes. */
+        private final PriorityQueue<Pair<DictionaryWord, Integer>> found =
+                new PriorityQueue<>(FUZZY_ORDER.reversed());
+
+        /**
+         * @param word     The searched word.
+         * @param maxEdits The maximum distance of a match.
+         * @param k        The maximum number of matches; non-positive for all of them.
+         */
+        Fuzzy(CharSequence word, int maxEdits, int k) {
+            this.word = word.toString().toCharArray();
+            this.maxEdits = maxEdits;
+            this.k = k;
+            rows = new int[this.word.length + maxEdits + 2][this.word.length + 1];
+            spelled = new char[rows.length];
+            for (int j = 0; j <= this.word.length; j++) {
+                rows[0][j] = j; // The empty path is j insertions away from each prefix
+            }
+        }
+
+        /**
+         * Collects the matches of a subtree whose path row is already computed.
+         *
+         * @param node  The root of the subtree.
+         * @param depth The length of the path to {@code node}.
+         */
+        void visit(CompressedTrieNode node, int depth) {
+            if (node.isEndOfWord && Math.abs(depth - word.length) <= maxEdits // Else the last cell is out of the band
+                    && rows[depth][word.length] <= bound()) {
+                offer(node, depth, rows[depth][word.length]);
+            }
+
+            ChildTable children = node.children;
+            for (int i = 0; i < children.slots(); i++) {
+                ChildTable.Edge edge = children.slot(i);
+                if (edge == null || edge.child.maxImportance < 0) continue;
+
+                int d = depth;
+                int min = 0;
+                for (int c = 0; c < edge.length && min <= bound(); c++) {
+                    spelled[d] = labels.chars[edge.offset + c];
+                    min = step(rows[d], rows[d + 1], d + 1, spelled[d]);
+                    d++;
+                }
+                if (min <= bound() && !hopeless(edge.child, min)) {
+                    visit(edge.child, d);
+                }
+            }
         }
 
-        for (int i = 0; i < node.hash.capacity; i++) {
-            if (node.hash.table[i] == null) continue;
-            getWordsRec(node.hash.table[i].child, word + node.hash.table[i].label, heap);
+        /**
+         * Computes the row of a path from the row of the path one character shorter.
+         * A cell {@code j} of row {@code d} is at least {@code |d - j|}, so only the band
+         * of cells within {@code maxEdits} of the diagonal is computed; the cells just
+         * outside it are set to {@code maxEdits + 1} for the next row to read.
+         *
+         * @param prev  The row of the shorter path.
+         * @param row   Receives the row of the path.
+         * @param depth The length of the path.
+         * @param c     The last character of the path.
+         * @return The smallest value of the row, exact if it is at most {@code maxEdits}.
+         */
+        private int step(int[] prev, int[] row, int depth, char c) {
+            int lo = Math.max(1, depth - maxEdits);
+            int hi = Math.min(word.length, depth + maxEdits);
+            row[0] = depth;
+            if (lo > 1) row[lo - 1] = maxEdits + 1;
+            if (hi < word.length) row[hi + 1] = maxEdits + 1;
+
+            int min = row[0];
+            for (int j = lo; j <= hi; j++) {
+                int v = prev[j - 1] + (word[j - 1] == c ? 0 : 1);
+                v = Math.min(v, Math.min(prev[j], row[j - 1]) + 1);
+                row[j] = v;
+                min = Math.min(min, v);
+            }
+            return min;
+        }
+
+        /**
+         * @return The largest distance a new match can have.
+         */
+        private int bound() {
+            return isFull() ? found.peek().getRight() : maxEdits;
         }
+
+        /**
+         * @return Whether {@code k} matches are already found.
+         */
+        private boolean isFull() {
+            return k > 0 && found.size() == k;
+        }
+
+        /**
+         * A subtree whose words are all at least as far as the worst match, and none of
+         * them more important than it, cannot improve the matches.
+         *
+         * @param node The root of the subtree.
+         * @param min  The smallest distance of a word of the subtree.
+         * @return Whether the subtree can be skipped.
+         */
+        private boolean hopeless(CompressedTrieNode node, int min) {
+            if (!isFull()) {
+                return false;
+            }
+            Pair<DictionaryWord, Integer> worst = found.peek();
+            return min >= worst.getRight() && node.maxImportance < worst.getLeft().getImportance();
+        }
+
+        /**
+         * Adds the word of a node to the matches, dropping the worst one if there are
+         * already {@code k}.
+         *
+         * @param node     The node of the word.
+         * @param depth    The length of the word.
+         * @param distance The distance of the word.
+         */
+        private void offer(CompressedTrieNode node, int depth, int distance) {
+            Pair<DictionaryWord, Integer> match =
+                    new Pair<>(new DictionaryWord(new String(spelled, 0, depth), node.importance), distance);
+            if (isFull()) {
+                if (FUZZY_ORDER.compare(match, found.peek()) >= 0) {
+                    return;
+                }
+                found.poll();
+            }
+            found.add(match);
+        }
+    }
+
+    /**
+     * Creates an immutable, succinct snapshot of this trie for serving lookups.
+     * The snapshot answers {@code search}, {@code getWordsWithPrefix} and
+     * {@code predictNextLetter} like this trie, using a fraction of its memory.
+     * Later changes to this trie are not reflected in the snapshot.
+     *
+     * @return The frozen snapshot.
+     */
+    public FrozenTrie freeze() {
+        return FrozenTrie.of(root, labels);
     }
 
     /**
      * Predicts the next letter based on the highest average frequency of words
-     * that follow the prefix.
+     * that follow the prefix. The averages come from the subtree aggregates of the
+     * children, so the cost depends on the number of children and not on the number
+     * of words below them.
      *
      * @param prefix The current input prefix.
      * @return The predicted next character, or '\0' if no prediction can be made.
      */
+    @Override
     public char predictNextLetter(String prefix) {
         Pair<CompressedTrieNode, String> pair = getPrefix(prefix);
         if (pair.getLeft() == null)
@@ -379,21 +1661,65 @@ public class CompressedTrie {
             return pair.getRight().charAt(0);
         }
 
+        ChildTable.Edge best = bestEdge(pair.getLeft());
+        return best == null ? '\0' : best.first;
+    }
+
+    /**
+     * Predicts the most likely continuation of a prefix, following the child with the
+     * highest average frequency at every node (like {@link #predictNextLetter}) until
+     * no child has a positive average or {@code n} characters have been predicted.
+     * Every step reads only the aggregates of the children, so the cost is proportional
+     * to the depth of the path.
+     *
+     * @param prefix The current input prefix.
+     * @param n      The maximum number of characters to predict, or -1 for no limit.
+     * @return The predicted characters that follow the prefix; empty if no prediction can be made.
+     */
+    @Override
+    public String predictCompletion(String prefix, int n) {
+        Pair<CompressedTrieNode, String> pair = getPrefix(prefix);
+        if (pair.getLeft() == null)
+            return "";
+
+        int limit = n < 0 ? Integer.MAX_VALUE : n;
+        StringBuilder out = new StringBuilder(pair.getRight()); // The rest of the edge is certain
         CompressedTrieNode cur = pair.getLeft();
-        int maxIndex = -1;
+        while (out.length() < limit) {
+            ChildTable.Edge best = bestEdge(cur);
+            if (best == null) break;
+            out.append(labels.chars, best.offset, best.length);
+            cur = best.child;
+        }
+
+        if (out.length() > limit) {
+            out.setLength(limit);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Finds the outgoing edge whose subtree has the highest average importance.
+     * Ties go to the edge found first in the child table.
+     *
+     * @param node The node.
+     * @return The edge, or {@code null} if no subtree has a positive average.
+     */
+    private static ChildTable.Edge bestEdge(CompressedTrieNode node) {
+        ChildTable.Edge best = null;
         float max = 0;
 
-        for (int i = 0; i < cur.hash.capacity; i++) {
-            if (cur.hash.table[i] == null) continue;
-            MinHeap heap = getWordsWithPrefix(prefix + cur.hash.table[i].label, -1);
-            float freq = heap.getAvgFrequency();
+        for (int i = 0; i < node.children.slots(); i++) {
+            ChildTable.Edge edge = node.children.slot(i);
+            if (edge == null || edge.child.words == 0) continue;
+            float freq = ((float) edge.child.totalImportance) / edge.child.words;
             if (freq > max) {
                 max = freq;
-                maxIndex = i;
+                best = edge;
             }
         }
 
-        return maxIndex == -1 ? '\0' : cur.hash.table[maxIndex].label.charAt(0);
+        return best;
     }
 
     /**
@@ -402,6 +1728,21 @@ public class CompressedTrie {
      * @param args Command line arguments (not used).
      */
     public static void main(String[] args) {
+        var fresh = new CompressedTrie();
+        for (String w : new String[]{"bear", "bell", "bid", "be", "bull", "stock", "stop"}) {
+            fresh.insert(w);
+        }
+        if (fresh.root.maxImportance < 0 || fresh.getWordsWithPrefix("", 3).size() != 3) {
+            throw new AssertionError("Inserted words are invisible to the best-first search");
+        }
+        for (String w : new String[]{"bear", "bell", "bid", "be", "bull", "stock", "stop"}) {
+            fresh.delete(w);
+        }
+        fresh.insert("bell");
+        if (fresh.root.maxImportance < 0 || fresh.fuzzySearch("bel", 1, 3).isEmpty()) {
+            throw new AssertionError("Re-inserted words are invisible to the best-first search");
+        }
+
         var a = new CompressedTrie();
 
         a.insert("bear");
@@ -440,6 +1781,9 @@ public class CompressedTrie {
         System.out.println(a.search("bell"));
 
         System.out.println(a.getWordsWithPrefix("b", -1));
+        for (Pair<DictionaryWord, Integer> m : a.fuzzySearch("bel", 2, 3)) {
+            System.out.println(m.getLeft() + " at distance " + m.getRight());
+        }
 
         System.out.println();
     }
@@ -0,0 +1,565 @@
+package omadiki.robin;
+
+import omadiki.DictionaryWord;
+import omadiki.Lexicon;
+import omadiki.MinHeap;
+import omadiki.Pair;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A compressed trie that many threads can search and insert into at the same time.
+ * <p>
+ * Every node keeps its outgoing edges in an array sorted by first character. That
+ * array, and the edges in it, are never modified once a reader can see them: an
+ * insertion builds a new array (splitting an edge means building the new middle node
+ * first, with the old child under it) and publishes it with a single volatile write,
+ * while holding the lock of that one node. Readers never lock, never retry and always
+ * see either the old or the new array, both of which describe a valid trie, so lookups
+ * are wait-free. Writers only contend when they change the same node.
+ * </p>
+ * <p>
+ * The importance counters are incremented with an atomic {@link VarHandle} add, so
+ * concurrent searches of the same word are all counted. The edge arrays replace the
+ * {@link ChildTable}s of {@link CompressedTrie}: a copy-on-write table would have to be
+ * copied whole on every insertion and change of kind, where a sorted array of at most
+ * 26 edges is copied as cheaply and searched with a binary search.
+ * </p>
+ */
+public final class ConcurrentCompressedTrie implements Lexicon {
+
+    /** Atomic access to {@link Node#importance}. */
+    private static final VarHandle IMPORTANCE;
+
+    static {
+        try {
+            IMPORTANCE = MethodHandles.lookup().findVarHandle(Node.class, "importance", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** The edges of a node without children. */
+    private static final Edge[] NO_EDGES = new Edge[0];
+
+    /**
+     * An immutable edge: a non-empty label and the node it leads to.
+     */
+    static final class Edge {
+        /** The characters of the edge. */
+        final String label;
+        /** The node at the end of the edge. */
+        final Node child;
+
+        /**
+         * @param label The characters of the edge.
+         * @param child The node at the end of the edge.
+         */
+        Edge(String label, Node child) {
+            this.label = label;
+            this.child = child;
+        }
+    }
+
+    /**
+     * A node of the concurrent trie.
+     */
+    static final class Node {
+        /** The outgoing edges, sorted by first character. Replaced, never modified. */
+        volatile Edge[] edges;
+        /** Whether a word ends at this node. */
+        volatile boolean isEndOfWord;
+        /** How many times the word has been searched; updated through {@link #IMPORTANCE}. */
+        volatile int importance;
+
+        /**
+         * @param edges       The outgoing edges, sorted by first character.
+         * @param isEndOfWord Whether a word ends at this node.
+         */
+        Node(Edge[] edges, boolean isEndOfWord) {
+            this.edges = edges;
+            this.isEndOfWord = isEndOfWord;
+        }
+    }
+
+    /** The root of the trie; it never holds a word. */
+    private final Node root = new Node(NO_EDGES, false);
+
+    /**
+     * Finds the edge whose label starts with a character.
+     *
+     * @param edges The sorted edges of a node.
+     * @param c     The first character.
+     * @return The index of the edge, or {@code -(insertion point) - 1} if there is none.
+     */
+    private static int indexOf(Edge[] edges, char c) {
+        int lo = 0;
+        int hi = edges.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            char m = edges[mid].label.charAt(0);
+            if (m < c) {
+                lo = mid + 1;
+            } else if (m > c) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -lo - 1;
+    }
+
+    /**
+     * Counts the characters an edge label shares with a word from position {@code pos}.
+     *
+     * @param label The edge label.
+     * @param word  The word.
+     * @param pos   The first character of the word to compare.
+     * @return The length of the common prefix.
+     */
+    private static int common(String label, CharSequence word, int pos) {
+        int n = Math.min(label.length(), word.length() - pos);
+        int i = 0;
+        while (i < n && label.charAt(i) == word.charAt(pos + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Walks the trie along a word without locking.
+     *
+     * @param word The word.
+     * @return The node the whole word leads to, or {@code null} if it is not a path in the trie.
+     */
+    private Node findNode(CharSequence word) {
+        Node node = root;
+        int pos = 0;
+        int end = word.length();
+        while (pos < end) {
+            Edge[] edges = node.edges;
+            int i = indexOf(edges, word.charAt(pos));
+            if (i < 0) return null;
+            Edge edge = edges[i];
+            if (common(edge.label, word, pos) < edge.label.length()) return null;
+            pos += edge.label.length();
+            node = edge.child;
+        }
+        return node;
+    }
+
+    /**
+     * Searches for a word and, if it is found, atomically increments its importance.
+     * This never blocks, whatever the other threads do.
+     *
+     * @param word The word to search for.
+     * @return {@code true} if the word exists, {@code false} otherwise.
+     */
+    @Override
+    public boolean search(CharSequence word) {
+        Node node = findNode(word);
+        if (node == null || !node.isEndOfWord) return false;
+        IMPORTANCE.getAndAdd(node, 1);
+        return true;
+    }
+
+    /**
+     * Checks whether a word is in the trie, without counting it as a use.
+     *
+     * @param word The word to look for.
+     * @return {@code true} if the word exists.
+     */
+    public boolean contains(CharSequence word) {
+        Node node = findNode(word);
+        return node != null && node.isEndOfWord;
+    }
+
+    /**
+     * Inserts a word. Safe to call from many threads at once.
+     *
+     * @param word The word to insert.
+     * @return {@code true} if the word was added, {@code false} if it was already there.
+     */
+    public boolean insert(CharSequence word) {
+        int end = word.length();
+        if (end == 0) {
+            System.err.println("Tried to insert empty word in ConcurrentCompressedTrie!");
+            return false;
+        }
+
+        Node node = root;
+        int pos = 0;
+        while (true) {
+            Node next;
+            synchronized (node) {
+                if (pos == end) {
+                    if (node.isEndOfWord) return false;
+                    node.isEndOfWord = true;
+                    return true;
+                }
+
+                Edge[] edges = node.edges;
+                int i = indexOf(edges, word.charAt(pos));
+                if (i < 0) { // New edge with the rest of the word
+                    Node leaf = new Node(NO_EDGES, true);
+                    node.edges = inserted(edges, -i - 1, new Edge(word.subSequence(pos, end).toString(), leaf));
+                    return true;
+                }
+
+                Edge edge = edges[i];
+                int common = common(edge.label, word, pos);
+                if (common == edge.label.length()) {
+                    next = edge.child;
+                    pos += common;
+                } else { // Split the edge: build the middle node completely before publishing it
+                    Edge lower = new Edge(edge.label.substring(common), edge.child);
+                    Node middle;
+                    if (pos + common == end) {
+                        middle = new Node(new Edge[]{lower}, true);
+                    } else {
+                        Edge rest = new Edge(word.subSequence(pos + common, end).toString(), new Node(NO_EDGES, true));
+                        middle = new Node(rest.label.charAt(0) < lower.label.charAt(0)
+                                ? new Edge[]{rest, lower} : new Edge[]{lower, rest}, false);
+                    }
+                    Edge[] copy = edges.clone();
+                    copy[i] = new Edge(edge.label.substring(0, common), middle);
+                    node.edges = copy;
+                    return true;
+                }
+            }
+            node = next;
+        }
+    }
+
+    /**
+     * Copies an edge array with one more edge.
+     *
+     * @param edges The sorted edges.
+     * @param at    Where the new edge goes.
+     * @param edge  The new edge.
+     * @return The new sorted array.
+     */
+    private static Edge[] inserted(Edge[] edges, int at, Edge edge) {
+        Edge[] copy = new Edge[edges.length + 1];
+        System.arraycopy(edges, 0, copy, 0, at);
+        copy[at] = edge;
+        System.arraycopy(edges, at, copy, at + 1, edges.length - at);
+        return copy;
+    }
+
+    /**
+     * Finds the node under a prefix. Like {@code CompressedTrie}, a prefix may end inside
+     * an edge; the rest of that edge is returned with the node.
+     *
+     * @param prefix The prefix.
+     * @return The node and the remaining characters of the last edge. The node is
+     * {@code null} if no word starts with the prefix.
+     */
+    private Pair<Node, String> getPrefix(String prefix) {
+        Node node = root;
+        int pos = 0;
+        int end = prefix.length();
+        while (pos < end) {
+            Edge[] edges = node.edges;
+            int i = indexOf(edges, prefix.charAt(pos));
+            if (i < 0) return new Pair<>(null, "");
+            Edge edge = edges[i];
+            int common = common(edge.label, prefix, pos);
+            pos += common;
+            node = edge.child;
+            if (common < edge.label.length()) {
+                if (pos < end) return new Pair<>(null, "");
+                return new Pair<>(node, edge.label.substring(common));
+            }
+        }
+        return new Pair<>(node, "");
+    }
+
+    /**
+     * Retrieves the {@code k} most frequent words starting with the given prefix.
+     * Words inserted or counted while this runs may or may not be included.
+     *
+     * @param prefix The starting prefix.
+     * @param k      The maximum number of words to return, or -1 for all of them.
+     * @return A {@link MinHeap} containing {@link DictionaryWord} objects (word and frequency).
+     */
+    @Override
+    public MinHeap getWordsWithPrefix(String prefix, int k) {
+        MinHeap heap = new MinHeap(k);
+        Pair<Node, String> start = getPrefix(prefix);
+        if (start.getLeft() == null) return heap;
+
+        ArrayDeque<Pair<Node, String>> stack = new ArrayDeque<>();
+        stack.push(new Pair<>(start.getLeft(), prefix + start.getRight()));
+        while (!stack.isEmpty()) {
+            Pair<Node, String> cur = stack.pop();
+            Node node = cur.getLeft();
+            int importance = node.importance;
+            if (node.isEndOfWord && heap.admits(importance)) {
+                heap.insert(cur.getRight(), importance);
+            }
+            for (Edge edge : node.edges) {
+                stack.push(new Pair<>(edge.child, cur.getRight() + edge.label));
+            }
+        }
+        return heap;
+    }
+
+    /**
+     * Counts the words of a subtree and sums their importance.
+     *
+     * @param start The root of the subtree.
+     * @param stats Receives the number of words and their total importance.
+     */
+    private static void subtreeStats(Node start, long[] stats) {
+        stats[0] = 0; // words
+        stats[1] = 0; // total importance
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.isEndOfWord) {
+                stats[0]++;
+                stats[1] += node.importance;
+            }
+            for (Edge e : node.edges) {
+                stack.push(e.child);
+            }
+        }
+    }
+
+    /**
+     * Counts the words that start with the given prefix by walking the subtree of the
+     * prefix; keeping per-node aggregates would make every search write to the shared
+     * path nodes.
+     *
+     * @param prefix The prefix.
+     * @return The number of words.
+     */
+    @Override
+    public int countWordsWithPrefix(String prefix) {
+        Node node = getPrefix(prefix).getLeft();
+        if (node == null) return 0;
+        long[] stats = new long[2];
+        subtreeStats(node, stats);
+        return (int) stats[0];
+    }
+
+    /**
+     * Computes the average importance of the words that start with the given prefix,
+     * by walking the subtree of the prefix.
+     *
+     * @param prefix The prefix.
+     * @return The average importance, or 0 if no word starts with the prefix.
+     */
+    @Override
+    public float getAverageFrequency(String prefix) {
+        Node node = getPrefix(prefix).getLeft();
+        if (node == null) return 0;
+        long[] stats = new long[2];
+        subtreeStats(node, stats);
+        return stats[0] == 0 ? 0 : ((float) stats[1]) / stats[0];
+    }
+
+    /**
+     * Predicts the next letter based on the highest average frequency of words
+     * that follow the prefix. Ties go to the smallest letter.
+     *
+     * @param prefix The current input prefix.
+     * @return The predicted next character, or '\0' if no prediction can be made.
+     */
+    @Override
+    public char predictNextLetter(String prefix) {
+        Pair<Node, String> pair = getPrefix(prefix);
+        if (pair.getLeft() == null) return '\0';
+        if (!pair.getRight().isEmpty()) return pair.getRight().charAt(0);
+
+        Edge best = bestEdge(pair.getLeft());
+        return best == null ? '\0' : best.label.charAt(0);
+    }
+
+    /**
+     * Predicts the most likely continuation of the prefix by following, one node after
+     * the other, the child with the highest average frequency. Every step walks the
+     * subtrees of the children.
+     *
+     * @param prefix The current input prefix.
+     * @param n      The maximum number of characters to predict, or -1 for no limit.
+     * @return The predicted characters that follow the prefix; empty if no prediction can be made.
+     */
+    @Override
+    public String predictCompletion(String prefix, int n) {
+        Pair<Node, String> pair = getPrefix(prefix);
+        if (pair.getLeft() == null) return "";
+
+        int limit = n < 0 ? Integer.MAX_VALUE : n;
+        StringBuilder out = new StringBuilder(pair.getRight());
+        Node node = pair.getLeft();
+        while (out.length() < limit) {
+            Edge best = bestEdge(node);
+            if (best == null) break;
+            out.append(best.label);
+            node = best.child;
+        }
+
+        if (out.length() > limit) out.setLength(limit);
+        return out.toString();
+    }
+
+    /**
+     * Finds the outgoing edge whose subtree has the highest average importance.
+     * Ties go to the smallest letter.
+     *
+     * @param node The node.
+     * @return The edge, or {@code null} if no subtree has a positive average.
+     */
+    private static Edge bestEdge(Node node) {
+        Edge best = null;
+        float max = 0;
+        long[] stats = new long[2];
+        for (Edge edge : node.edges) {
+            subtreeStats(edge.child, stats);
+            float freq = stats[0] == 0 ? 0 : ((float) stats[1]) / stats[0];
+            if (freq > max) {
+                max = freq;
+                best = edge;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Stress test and scaling measurement.
+     * <p>
+     * The stress test lets every thread insert an overlapping share of the dictionary in
+     * its own random order while searching for words, then checks that every word is
+     * present exactly once and that no search was lost. The scaling run then times
+     * concurrent insertion and search of the whole dictionary from 1 up to N threads.
+     *
+     * @param args The dictionary file and, optionally, the maximum number of threads.
+     * @throws Exception If the file cannot be read or a worker fails.
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> words = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(args[0]))) {
+            line = line.trim().toLowerCase();
+            if (!line.isEmpty()) words.add(line);
+        }
+        int max = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        stress(words, Math.max(4, max));
+
+        System.out.println("threads\tinsert ops/s\tsearch ops/s");
+        for (int threads = 1; threads <= max; threads++) {
+            ConcurrentCompressedTrie trie = new ConcurrentCompressedTrie();
+            long start = System.nanoTime();
+            runShares(words, threads, (share, id) -> {
+                for (String w : share) trie.insert(w);
+            });
+            double insert = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            runShares(words, threads, (share, id) -> {
+                for (String w : share) trie.search(w);
+            });
+            double search = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d\t%.0f\t%.0f%n", threads, words.size() / insert, words.size() / search);
+        }
+    }
+
+    /**
+     * Inserts and searches concurrently and checks the result.
+     *
+     * @param words   The dictionary.
+     * @param threads The number of threads.
+     * @throws Exception If a check fails.
+     */
+    private static void stress(List<String> words, int threads) throws Exception {
+        ConcurrentCompressedTrie trie = new ConcurrentCompressedTrie();
+        List<String> distinct = new ArrayList<>(new TreeSet<>(words));
+        AtomicLong added = new AtomicLong();
+        AtomicLong found = new AtomicLong();
+
+        runShares(distinct, threads, (share, id) -> {
+            // Every thread also inserts its neighbour's share, so every word is raced for
+            List<String> mine = new ArrayList<>(share);
+            int n = (id + 1) % threads;
+            mine.addAll(distinct.subList(distinct.size() * n / threads, distinct.size() * (n + 1) / threads));
+            Collections.shuffle(mine, new Random(id));
+            for (String w : mine) {
+                if (trie.insert(w)) added.incrementAndGet();
+                if (!trie.search(w)) throw new AssertionError("Lost " + w);
+                found.incrementAndGet();
+            }
+        });
+
+        if (added.get() != distinct.size()) {
+            throw new AssertionError("Added " + added + " words, expected " + distinct.size());
+        }
+        long total = 0;
+        DictionaryWord[] all = trie.getWordsWithPrefix("", -1).getSorted();
+        for (DictionaryWord w : all) total += w.getImportance();
+        if (all.length != distinct.size() || total != found.get()) {
+            throw new AssertionError(all.length + " words with importance " + total + ", expected "
+                    + distinct.size() + " and " + found);
+        }
+        for (String w : distinct) {
+            if (!trie.contains(w)) throw new AssertionError("Missing " + w);
+        }
+        System.out.println("Stress test passed: " + threads + " threads, " + distinct.size() + " words, "
+                + found + " searches");
+    }
+
+    /**
+     * Work done by one thread on its share of the words.
+     */
+    private interface Share {
+        /**
+         * @param share The words of this thread.
+         * @param id    The number of the thread.
+         * @throws Exception If the work fails.
+         */
+        void run(List<String> share, int id) throws Exception;
+    }
+
+    /**
+     * Splits the words into one contiguous share per thread and runs them in parallel.
+     *
+     * @param words   The words.
+     * @param threads The number of threads.
+     * @param work    The work on one share.
+     * @throws Exception If a thread fails.
+     */
+    private static void runShares(List<String> words, int threads, Share work) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                List<String> share = words.subList(words.size() * t / threads, words.size() * (t + 1) / threads);
+                int id = t;
+                futures.add(pool.submit(() -> {
+                    work.run(share, id);
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
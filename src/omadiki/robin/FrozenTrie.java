@@ -0,0 +1,888 @@
+package omadiki.robin;
+
+import omadiki.DictionaryWord;
+import omadiki.Lexicon;
+import omadiki.MinHeap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An immutable, succinct snapshot of a {@link CompressedTrie}, meant for serving
+ * lookups once the lexicon has been loaded.
+ * <p>
+ * The tree shape is stored as a LOUDS (Level-Order Unary Degree Sequence) bit vector:
+ * nodes are numbered in breadth-first order (root = 0) and every node writes one
+ * {@code 1} per child followed by a {@code 0}. The children of node {@code i} are then
+ * found with a single {@code select0}, and they always have consecutive numbers.
+ * The incoming edge label of every node is packed (one UTF-16 {@code char} per
+ * character) into a single buffer, the end-of-word flags are a second bit vector and
+ * the importance counters are an {@code int} per word, indexed by the rank of the
+ * word's node. Every node also keeps the aggregates of its subtree (number of words,
+ * total and highest importance), so averages and counts never walk a subtree and the
+ * top-K walk skips the subtrees that cannot beat the words already found.
+ * Children of a node are ordered by the first character of their label.
+ * </p>
+ * Only the importance counters and the importance aggregates can change after freezing.
+ * <p>
+ * A snapshot can be written to a binary image with {@link #save(Path)} and opened
+ * again with {@link #load(Path)}, which maps the file into memory and serves
+ * lookups straight from the mapped pages without copying or parsing anything.
+ * The image layout (all numbers little-endian) is:
+ * <pre>
+ *   header   MAGIC, VERSION, then the 12 section sizes below (int each), padded to 8 bytes
+ *   louds    words (long[]), ranks (int[]), samples (int[])
+ *   words    words (long[]), ranks (int[]), samples (int[])
+ *   labels   char[]
+ *   starts   int[]
+ *   counters int[]
+ *   count    int[], per node
+ *   total    long[], per node
+ *   max      int[], per node
+ * </pre>
+ * Every section starts at a multiple of 8 bytes.
+ */
+public final class FrozenTrie implements Lexicon {
+    /** The first four bytes of an image file ("TRIE"). */
+    private static final int MAGIC = 0x45495254;
+    /** The image format version written by {@link #save(Path)}. */
+    private static final int VERSION = 3;
+    /** The number of {@code int} fields in the header. */
+    private static final int HEADER_INTS = 14;
+
+    /** The tree shape, in LOUDS encoding. */
+    private final BitVector louds;
+    /** Bit {@code i} is set if node {@code i} terminates a word. */
+    private final BitVector words;
+    /** The labels of all edges, in node order. */
+    private final CharBuffer labels;
+    /** The label of node {@code i} is {@code labels[labelStart[i], labelStart[i + 1])}. */
+    private final IntBuffer labelStart;
+    /** Importance of every word, indexed by {@code words.rank1(node)}. */
+    private final IntBuffer importance;
+    /** Number of words in the subtree of every node. */
+    private final IntBuffer subtreeWords;
+    /** Total importance of the words in the subtree of every node. */
+    private final LongBuffer subtreeTotal;
+    /** Highest importance in the subtree of every node, or -1 if it has no words. */
+    private final IntBuffer subtreeMax;
+
+    /**
+     * Constructs a frozen trie over already built parts.
+     *
+     * @param louds      The tree shape.
+     * @param words      The end-of-word flags.
+     * @param labels     The packed labels.
+     * @param labelStart The label offsets (one more entry than there are nodes).
+     * @param importance The importance counters.
+     * @param count      The number of words under every node.
+     * @param total      The total importance under every node.
+     * @param max        The highest importance under every node.
+     */
+    FrozenTrie(BitVector louds, BitVector words, CharBuffer labels, IntBuffer labelStart, IntBuffer importance,
+               IntBuffer count, LongBuffer total, IntBuffer max) {
+        this.louds = louds;
+        this.words = words;
+        this.labels = labels;
+        this.labelStart = labelStart;
+        this.importance = importance;
+        this.subtreeWords = count;
+        this.subtreeTotal = total;
+        this.subtreeMax = max;
+    }
+
+    /**
+     * @return The number of words stored.
+     */
+    public int size() {
+        return importance.capacity();
+    }
+
+    /**
+     * Searches for a word.
+     * <p>
+     * If the word is found, its importance (usage counter) is incremented, and so are
+     * the aggregates of the nodes on its path.
+     * </p>
+     *
+     * @param word The word to search for.
+     * @return {@code true} if the word exists, {@code false} otherwise.
+     */
+    @Override
+    public boolean search(CharSequence word) {
+        int node = findNode(word, 0, word.length());
+        if (node < 0 || !words.get(node)) {
+            return false;
+        }
+        int index = words.rank1(node);
+        int imp = importance.get(index) + 1;
+        importance.put(index, imp);
+        for (int n = node; ; n = parent(n)) { // Up to the root
+            subtreeTotal.put(n, subtreeTotal.get(n) + 1);
+            if (subtreeMax.get(n) < imp) {
+                subtreeMax.put(n, imp);
+            }
+            if (n == 0) break;
+        }
+        return true;
+    }
+
+    /**
+     * Searches for the word stored in {@code buffer[offset, offset + length)}
+     * without creating a {@code String}.
+     *
+     * @param buffer The buffer holding the word.
+     * @param offset The index of the first character of the word.
+     * @param length The number of characters of the word.
+     * @return {@code true} if the word exists, {@code false} otherwise.
+     */
+    public boolean search(char[] buffer, int offset, int length) {
+        return search(new CharSlice().wrap(buffer, offset, length));
+    }
+
+    /**
+     * Index of the first child of a node.
+     *
+     * @param node The node.
+     * @return The number of its first child (children are consecutive).
+     */
+    private int firstChild(int node) {
+        int start = node == 0 ? 0 : louds.select0(node - 1) + 1;
+        return start - node + 1; // ones before start = start - node zeros
+    }
+
+    /**
+     * Number of children of a node.
+     *
+     * @param node The node.
+     * @return Its degree.
+     */
+    private int degree(int node) {
+        int start = node == 0 ? 0 : louds.select0(node - 1) + 1;
+        return louds.select0(node) - start;
+    }
+
+    /**
+     * Finds the child of {@code node} whose label starts with {@code c}.
+     *
+     * @param node The parent node.
+     * @param c    The first character of the wanted label.
+     * @return The child's number, or -1 if there is none.
+     */
+    private int child(int node, char c) {
+        int start = node == 0 ? 0 : louds.select0(node - 1) + 1;
+        int end = louds.select0(node);
+        int first = start - node + 1;
+        for (int child = first; child < first + end - start; child++) {
+            char f = labels.get(labelStart.get(child));
+            if (f == c) return child;
+            if (f > c) break; // Children are sorted by first character
+        }
+        return -1;
+    }
+
+    /**
+     * Walks the trie and returns the node the whole key leads to.
+     *
+     * @param word   The key.
+     * @param offset The index of the first character of the key.
+     * @param length The number of characters of the key.
+     * @return The node, or -1 if the key is not a path in the trie.
+     */
+    private int findNode(CharSequence word, int offset, int length) {
+        int node = 0;
+        int pos = offset;
+        int end = offset + length;
+
+        while (pos < end) {
+            node = child(node, word.charAt(pos));
+            if (node < 0) {
+                return -1;
+            }
+            int from = labelStart.get(node);
+            int labelLength = labelStart.get(node + 1) - from;
+            if (end - pos < labelLength) {
+                return -1;
+            }
+            for (int i = 1; i < labelLength; i++) {
+                if (labels.get(from + i) != word.charAt(pos + i)) {
+                    return -1;
+                }
+            }
+            pos += labelLength;
+        }
+
+        return node;
+    }
+
+    /**
+     * Finds the node under which all words with the given prefix live. If the prefix
+     * ends in the middle of an edge, the rest of that edge is appended to {@code word}.
+     *
+     * @param prefix The prefix.
+     * @param word   Receives the prefix and the rest of the last edge.
+     * @return The node, or -1 if no word starts with the prefix.
+     */
+    private int locate(String prefix, StringBuilder word) {
+        int node = 0;
+        int pos = 0;
+        int end = prefix.length();
+        word.append(prefix);
+
+        while (pos < end) {
+            node = child(node, prefix.charAt(pos));
+            if (node < 0) {
+                return -1;
+            }
+            int from = labelStart.get(node);
+            int to = labelStart.get(node + 1);
+            int i = 0;
+            while (i < to - from && pos + i < end && labels.get(from + i) == prefix.charAt(pos + i)) {
+                i++;
+            }
+            pos += i;
+            if (from + i < to) {
+                if (pos < end) { // Mismatch inside the edge
+                    return -1;
+                }
+                appendLabel(word, from + i, to); // Prefix ends inside the edge
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Appends part of the packed labels to a word.
+     *
+     * @param word The word.
+     * @param from The first label character.
+     * @param to   The end (exclusive).
+     */
+    private void appendLabel(StringBuilder word, int from, int to) {
+        for (int i = from; i < to; i++) {
+            word.append(labels.get(i));
+        }
+    }
+
+    /**
+     * Callback of {@link #walk}.
+     */
+    private interface NodeVisitor {
+        /**
+         * Visits a node of the subtree.
+         *
+         * @param node The node number.
+         * @return {@code false} to skip the children of the node.
+         */
+        boolean visit(int node);
+    }
+
+    /**
+     * Iterative depth-first traversal of the subtree under {@code start}. Children are
+     * visited in label order, so the words come in alphabetical order.
+     *
+     * @param start   The node to start from.
+     * @param visitor The callback invoked for every node.
+     */
+    private void walk(int start, NodeVisitor visitor) {
+        if (!visitor.visit(start)) {
+            return;
+        }
+        int[] next = new int[16]; // Next child to visit, per level
+        int[] end = new int[16];  // End (exclusive) of the children, per level
+        int depth = 0;
+
+        next[0] = firstChild(start);
+        end[0] = next[0] + degree(start);
+        depth++;
+
+        while (depth > 0) {
+            int level = depth - 1;
+            if (next[level] == end[level]) { // All children visited
+                depth--;
+                continue;
+            }
+
+            int node = next[level]++;
+            if (!visitor.visit(node)) {
+                continue;
+            }
+
+            if (depth == next.length) {
+                next = Arrays.copyOf(next, depth * 2);
+                end = Arrays.copyOf(end, depth * 2);
+            }
+            next[depth] = firstChild(node);
+            end[depth] = next[depth] + degree(node);
+            depth++;
+        }
+    }
+
+    /**
+     * Retrieves the {@code k} most frequent words starting with the given prefix.
+     *
+     * @param prefix The starting prefix.
+     * @param k      The maximum number of words to return, or -1 for all of them.
+     * @return A {@link MinHeap} containing {@link DictionaryWord} objects (word and frequency).
+     */
+    @Override
+    public MinHeap getWordsWithPrefix(String prefix, int k) {
+        Found found = new Found();
+        MinHeap heap = new MinHeap(k, found);
+        int node = locate(prefix, new StringBuilder());
+        if (node < 0) {
+            return heap;
+        }
+
+        walk(node, n -> { // No word is built: the heap spells its nodes when asked
+            if (heap.isFull() && subtreeMax.get(n) < heap.getMinImportance()) {
+                return false; // Nothing below can get in, even on a tie
+            }
+            if (words.get(n)) {
+                int imp = importance.get(words.rank1(n));
+                if (heap.admits(imp)) {
+                    heap.insert(found.add(n), imp);
+                }
+            }
+            return true;
+        });
+        return heap;
+    }
+
+    /**
+     * The handles of a {@link MinHeap} of words of this trie. The walk visits the words in
+     * alphabetical order (the children are sorted), so the handle of a word is its position
+     * in the list of words inserted so far, and two handles compare like their words.
+     * <p>
+     * A word is built by following the parents of its node (see {@link #parent}) up to a
+     * node on the path of the previous word built, whose characters are reused; the heap
+     * builds its words in handle order, so consecutive words usually share most of it.
+     * </p>
+     */
+    private final class Found implements MinHeap.Handles {
+        /** The node of every handle. */
+        private int[] nodes = new int[16];
+        /** The number of handles given out. */
+        private int count;
+        /** The nodes from the root (excluded) down to the node of the last word built. */
+        private int[] path = new int[16];
+        /** {@code ends[d]} is the length of the last word built at {@code path[d]}. */
+        private int[] ends = new int[16];
+        /** The number of nodes in {@code path}. */
+        private int depth;
+        /** The characters of the last word built. */
+        private char[] chars = new char[32];
+
+        /**
+         * @param node The node of a word, visited after all the nodes added so far.
+         * @return The handle of the word.
+         */
+        int add(int node) {
+            if (count == nodes.length) {
+                nodes = Arrays.copyOf(nodes, count * 2);
+            }
+            nodes[count] = node;
+            return count++;
+        }
+
+        @Override
+        public int compare(int a, int b) {
+            return Integer.compare(a, b);
+        }
+
+        @Override
+        public String word(int handle) {
+            // Climb until the root or a node of the previous path, keeping the nodes passed
+            int[] climbed = new int[8];
+            int up = 0;
+            int keep = -1;
+            for (int n = nodes[handle]; n != 0 && (keep = indexOf(n)) < 0; n = parent(n)) {
+                if (up == climbed.length) {
+                    climbed = Arrays.copyOf(climbed, up * 2);
+                }
+                climbed[up++] = n;
+            }
+
+            depth = keep + 1; // The shared part of the path, possibly empty
+            int length = keep < 0 ? 0 : ends[keep];
+            while (up > 0) {
+                int n = climbed[--up];
+                int from = labelStart.get(n);
+                int to = labelStart.get(n + 1);
+                if (length + to - from > chars.length) {
+                    chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + to - from));
+                }
+                labels.get(from, chars, length, to - from);
+                length += to - from;
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    ends = Arrays.copyOf(ends, depth * 2);
+                }
+                path[depth] = n;
+                ends[depth++] = length;
+            }
+            return new String(chars, 0, length);
+        }
+
+        /**
+         * @param node A node.
+         * @return Its position in the path of the last word built, or -1.
+         */
+        private int indexOf(int node) {
+            for (int d = depth - 1; d >= 0; d--) {
+                if (path[d] == node) return d;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * The parent of a node, read from the LOUDS bits: child {@code c} is the
+     * {@code c}-th one and its parent is the number of zeros before that one.
+     *
+     * @param node A node other than the root.
+     * @return Its parent.
+     */
+    private int parent(int node) {
+        return louds.select1(node - 1) - (node - 1);
+    }
+
+    /**
+     * Counts the words that start with the given prefix, from the aggregates of the
+     * prefix node.
+     *
+     * @param prefix The prefix.
+     * @return The number of words.
+     */
+    @Override
+    public int countWordsWithPrefix(String prefix) {
+        int node = locate(prefix, new StringBuilder());
+        return node < 0 ? 0 : subtreeWords.get(node);
+    }
+
+    /**
+     * Computes the average importance of the words that start with the given prefix,
+     * from the aggregates of the prefix node.
+     *
+     * @param prefix The prefix.
+     * @return The average importance, or 0 if no word starts with the prefix.
+     */
+    @Override
+    public float getAverageFrequency(String prefix) {
+        int node = locate(prefix, new StringBuilder());
+        if (node < 0) {
+            return 0;
+        }
+        return average(node);
+    }
+
+    /**
+     * @param node A node.
+     * @return The average importance of the words of its subtree, or 0 if it has none.
+     */
+    private float average(int node) {
+        int count = subtreeWords.get(node);
+        return count == 0 ? 0 : ((float) subtreeTotal.get(node)) / count;
+    }
+
+    /**
+     * Predicts the next letter based on the highest average frequency of words
+     * that follow the prefix. Ties are broken in favour of the smallest letter.
+     *
+     * @param prefix The current input prefix.
+     * @return The predicted next character, or '\0' if no prediction can be made.
+     */
+    @Override
+    public char predictNextLetter(String prefix) {
+        StringBuilder word = new StringBuilder();
+        int node = locate(prefix, word);
+        if (node < 0)
+            return '\0';
+        if (word.length() > prefix.length()) {
+            return word.charAt(prefix.length());
+        }
+
+        int best = bestChild(node);
+        return best == -1 ? '\0' : labels.get(labelStart.get(best));
+    }
+
+    /**
+     * Predicts the most likely continuation of the prefix by following, one node after
+     * the other, the child with the highest average frequency, read from the aggregates
+     * of the children.
+     *
+     * @param prefix The current input prefix.
+     * @param n      The maximum number of characters to predict, or -1 for no limit.
+     * @return The predicted characters that follow the prefix; empty if no prediction can be made.
+     */
+    @Override
+    public String predictCompletion(String prefix, int n) {
+        StringBuilder word = new StringBuilder();
+        int node = locate(prefix, word);
+        if (node < 0)
+            return "";
+
+        int limit = n < 0 ? Integer.MAX_VALUE : n;
+        while (word.length() - prefix.length() < limit) {
+            node = bestChild(node);
+            if (node < 0) break;
+            appendLabel(word, labelStart.get(node), labelStart.get(node + 1));
+        }
+
+        String out = word.substring(prefix.length());
+        return out.length() > limit ? out.substring(0, limit) : out;
+    }
+
+    /**
+     * Finds the child whose subtree has the highest average importance.
+     * Ties are broken in favour of the smallest letter.
+     *
+     * @param node The node.
+     * @return The child, or -1 if no subtree has a positive average.
+     */
+    private int bestChild(int node) {
+        int first = firstChild(node);
+        int best = -1;
+        float max = 0;
+
+        for (int child = first; child < first + degree(node); child++) {
+            float freq = average(child);
+            if (freq > max) {
+                max = freq;
+                best = child;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Computes the memory used by the snapshot.
+     *
+     * @return The number of bytes used by all its arrays.
+     */
+    public long getTotalMemory() {
+        return louds.getTotalMemory() + words.getTotalMemory()
+                + 16L + 2L * labels.capacity()
+                + 16L + 4L * labelStart.capacity()
+                + 16L + 4L * importance.capacity()
+                + 16L + 4L * subtreeWords.capacity()
+                + 16L + 8L * subtreeTotal.capacity()
+                + 16L + 4L * subtreeMax.capacity();
+    }
+
+    /**
+     * Writes the snapshot, including the current importance counters and aggregates, to a binary image.
+     *
+     * @param file The file to create or overwrite.
+     * @throws IOException If the file cannot be written.
+     */
+    public void save(Path file) throws IOException {
+        long size = align(4L * HEADER_INTS)
+                + sectionSize(louds) + sectionSize(words)
+                + align(2L * labels.capacity()) + align(4L * labelStart.capacity()) + align(4L * importance.capacity())
+                + align(4L * subtreeWords.capacity()) + 8L * subtreeTotal.capacity() + align(4L * subtreeMax.capacity());
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Trie image too large: " + size + " bytes");
+        }
+
+        ByteBuffer out = ByteBuffer.allocateDirect((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(MAGIC).putInt(VERSION);
+        out.putInt(louds.size()).putInt(louds.words().capacity()).putInt(louds.samples().capacity());
+        out.putInt(words.size()).putInt(words.words().capacity()).putInt(words.samples().capacity());
+        out.putInt(labels.capacity()).putInt(labelStart.capacity()).putInt(importance.capacity());
+        out.putInt(subtreeWords.capacity()).putInt(subtreeTotal.capacity()).putInt(subtreeMax.capacity());
+        pad(out);
+
+        putBits(out, louds);
+        putBits(out, words);
+        for (int i = 0; i < labels.capacity(); i++) out.putChar(labels.get(i));
+        pad(out);
+        putInts(out, labelStart);
+        putInts(out, importance);
+        putInts(out, subtreeWords);
+        for (int i = 0; i < subtreeTotal.capacity(); i++) out.putLong(subtreeTotal.get(i));
+        putInts(out, subtreeMax);
+
+        out.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+        }
+    }
+
+    /**
+     * Opens a binary image written by {@link #save(Path)}.
+     * <p>
+     * The file is mapped privately (copy-on-write): no section is copied to the heap,
+     * and importance increments stay in memory without changing the file. A private
+     * mapping needs a channel opened for writing, so a file that cannot be opened for
+     * writing (a read-only file or file system) is mapped read-only instead, with its
+     * importance counters and importance aggregates copied to the heap.
+     * </p>
+     *
+     * @param file The image file.
+     * @return A snapshot backed by the mapped file.
+     * @throws IOException If the file cannot be read or is not a valid image.
+     */
+    public static FrozenTrie load(Path file) throws IOException {
+        ByteBuffer in = map(file).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (in.remaining() < 4 * HEADER_INTS || in.getInt() != MAGIC) {
+            throw new IOException("Not a trie image: " + file);
+        }
+        int version = in.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trie image version " + version + " in " + file);
+        }
+
+        int[] header = new int[HEADER_INTS - 2];
+        for (int i = 0; i < header.length; i++) {
+            header[i] = in.getInt();
+        }
+        int position = (int) align(4L * HEADER_INTS);
+
+        try {
+            BitVector louds = bitsAt(in, position, header[0], header[1], header[2]);
+            position += sectionSize(louds);
+            BitVector ends = bitsAt(in, position, header[3], header[4], header[5]);
+            position += sectionSize(ends);
+            CharBuffer labels = in.slice(position, 2 * header[6]).order(ByteOrder.LITTLE_ENDIAN).asCharBuffer();
+            position += align(2L * header[6]);
+            IntBuffer starts = in.slice(position, 4 * header[7]).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            position += align(4L * header[7]);
+            IntBuffer counters = in.slice(position, 4 * header[8]).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            position += align(4L * header[8]);
+            IntBuffer count = in.slice(position, 4 * header[9]).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            position += align(4L * header[9]);
+            LongBuffer total = in.slice(position, 8 * header[10]).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+            position += 8 * header[10];
+            IntBuffer max = in.slice(position, 4 * header[11]).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            if (counters.isReadOnly()) { // Mapped read-only: the counters and their aggregates must still grow
+                counters = IntBuffer.wrap(copy(counters));
+                max = IntBuffer.wrap(copy(max));
+                long[] totals = new long[total.remaining()];
+                total.get(totals);
+                total = LongBuffer.wrap(totals);
+            }
+
+            return new FrozenTrie(louds, ends, labels, starts, counters, count, total, max);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("Truncated trie image: " + file, e);
+        }
+    }
+
+    /**
+     * Copies an {@code int} section to the heap.
+     *
+     * @param values The section.
+     * @return Its values.
+     */
+    private static int[] copy(IntBuffer values) {
+        int[] copy = new int[values.remaining()];
+        values.get(copy);
+        return copy;
+    }
+
+    /**
+     * Maps an image privately, or read-only if it cannot be opened for writing.
+     *
+     * @param file The image file.
+     * @return The mapping; it is read-only in the second case.
+     * @throws IOException If the file cannot be read or is too large.
+     */
+    private static MappedByteBuffer map(Path file) throws IOException {
+        FileChannel channel;
+        FileChannel.MapMode mode = FileChannel.MapMode.PRIVATE;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (FileSystemException e) { // Not writable, or missing, which opening it again reports
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            mode = FileChannel.MapMode.READ_ONLY;
+        }
+        try (FileChannel c = channel) {
+            if (c.size() > Integer.MAX_VALUE) {
+                throw new IOException("Trie image too large: " + file);
+            }
+            return c.map(mode, 0, c.size());
+        }
+    }
+
+    /**
+     * Creates a bit vector over the sections of an image.
+     *
+     * @param in          The whole image.
+     * @param position    Where the bit vector's sections start.
+     * @param size        The number of bits.
+     * @param wordCount   The number of 64-bit words.
+     * @param sampleCount The number of select samples.
+     * @return A bit vector backed by the image.
+     */
+    private static BitVector bitsAt(ByteBuffer in, int position, int size, int wordCount, int sampleCount) {
+        LongBuffer bits = in.slice(position, 8 * wordCount).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+        position += 8 * wordCount;
+        IntBuffer ranks = in.slice(position, 4 * (wordCount + 1)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        position += (int) align(4L * (wordCount + 1));
+        IntBuffer samples = in.slice(position, 4 * sampleCount).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        return new BitVector(bits, ranks, samples, size);
+    }
+
+    /**
+     * The number of image bytes taken by a bit vector.
+     *
+     * @param bits The bit vector.
+     * @return Its size, including padding.
+     */
+    private static int sectionSize(BitVector bits) {
+        return (int) (8L * bits.words().capacity() + align(4L * bits.ranks().capacity()) + align(4L * bits.samples().capacity()));
+    }
+
+    /**
+     * Writes the sections of a bit vector.
+     *
+     * @param out  The image being written.
+     * @param bits The bit vector.
+     */
+    private static void putBits(ByteBuffer out, BitVector bits) {
+        LongBuffer w = bits.words();
+        for (int i = 0; i < w.capacity(); i++) out.putLong(w.get(i));
+        putInts(out, bits.ranks());
+        putInts(out, bits.samples());
+    }
+
+    /**
+     * Writes an {@code int} section followed by its padding.
+     *
+     * @param out    The image being written.
+     * @param values The values.
+     */
+    private static void putInts(ByteBuffer out, IntBuffer values) {
+        for (int i = 0; i < values.capacity(); i++) out.putInt(values.get(i));
+        pad(out);
+    }
+
+    /**
+     * Pads the image with zeros up to the next multiple of 8 bytes.
+     *
+     * @param out The image being written.
+     */
+    private static void pad(ByteBuffer out) {
+        while ((out.position() & 7) != 0) out.put((byte) 0);
+    }
+
+    /**
+     * Rounds a size up to a multiple of 8 bytes.
+     *
+     * @param size The size.
+     * @return The aligned size.
+     */
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * Builds a frozen snapshot of a compressed trie by a breadth-first traversal.
+     * The subtree aggregates are recomputed from the counters, children before parents.
+     *
+     * @param root   The root of the trie.
+     * @param arena  The label arena of the trie.
+     * @return The snapshot.
+     */
+    static FrozenTrie of(CompressedTrie.CompressedTrieNode root, LabelArena arena) {
+        BitVector.Builder louds = new BitVector.Builder();
+        BitVector.Builder ends = new BitVector.Builder();
+        char[] packed = new char[Math.max(arena.size - arena.dead, 16)];
+        int packedSize = 0;
+        int[] starts = new int[64]; // starts[0] = 0: the root has an empty label
+        int[] parents = new int[64];
+        int[] counters = new int[64];
+        int wordCount = 0;
+
+        CompressedTrie.CompressedTrieNode[] queue = new CompressedTrie.CompressedTrieNode[64];
+        queue[0] = root;
+        int head = 0;
+        int tail = 1;
+        ChildTable.Edge[] children = new ChildTable.Edge[32];
+
+        while (head < tail) {
+            CompressedTrie.CompressedTrieNode node = queue[head++];
+
+            ends.append(node.isEndOfWord);
+            if (node.isEndOfWord) {
+                if (wordCount == counters.length) {
+                    counters = Arrays.copyOf(counters, counters.length * 2);
+                }
+                counters[wordCount++] = node.importance;
+            }
+
+            // Children in first-character order
+            if (children.length < node.children.size()) {
+                children = new ChildTable.Edge[node.children.size()];
+            }
+            int degree = node.children.edges(children);
+            Arrays.sort(children, 0, degree, (a, b) -> a.first - b.first);
+
+            for (int i = 0; i < degree; i++) {
+                ChildTable.Edge e = children[i];
+                louds.append(true);
+                if (tail + 1 >= queue.length) {
+                    queue = Arrays.copyOf(queue, queue.length * 2);
+                    starts = Arrays.copyOf(starts, queue.length);
+                    parents = Arrays.copyOf(parents, queue.length);
+                }
+                starts[tail] = packedSize; // The label of a node is packed when it is queued
+                parents[tail] = head - 1;
+                queue[tail++] = e.child;
+
+                if (packedSize + e.length > packed.length) {
+                    packed = Arrays.copyOf(packed, Math.max(packed.length * 2, packedSize + e.length));
+                }
+                System.arraycopy(arena.chars, e.offset, packed, packedSize, e.length);
+                packedSize += e.length;
+            }
+            louds.append(false);
+        }
+
+        starts[tail] = packedSize;
+
+        BitVector endBits = ends.build();
+        int[] count = new int[tail];
+        long[] total = new long[tail];
+        int[] max = new int[tail];
+        for (int i = tail - 1; i >= 0; i--) { // Breadth-first order reversed: every child comes before its parent
+            if (endBits.get(i)) {
+                int imp = counters[endBits.rank1(i)];
+                count[i]++;
+                total[i] += imp;
+                max[i] = Math.max(max[i], imp);
+            } else if (count[i] == 0) {
+                max[i] = -1;
+            }
+            if (i > 0) {
+                int p = parents[i];
+                count[p] += count[i];
+                total[p] += total[i];
+                max[p] = Math.max(max[p], max[i]);
+            }
+        }
+
+        return new FrozenTrie(louds.build(), endBits,
+                CharBuffer.wrap(Arrays.copyOf(packed, packedSize)),
+                IntBuffer.wrap(Arrays.copyOf(starts, tail + 1)),
+                IntBuffer.wrap(Arrays.copyOf(counters, wordCount)),
+                IntBuffer.wrap(count), LongBuffer.wrap(total), IntBuffer.wrap(max));
+    }
+}
@@ -0,0 +1,756 @@
+package omadiki.robin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Makes the importance counters of a {@link CompressedTrie} durable, with a write-ahead
+ * log of the increments and periodic snapshots of all the counters.
+ * <p>
+ * Every successful {@code search} appends a record to an in-memory buffer: the word and
+ * its new importance. Records hold the value and not the increment, so replaying one
+ * twice, or over a snapshot that already includes it, does no harm. When the buffer is
+ * full, or every {@value #FLUSH_MILLIS} ms, it is swapped for an empty one and the
+ * background thread writes it to the current log segment as one frame, with a single
+ * {@code write} (group commit); how often the segment is forced to the disk is set by
+ * the {@link Fsync} policy. The increments of the last interval may be lost by a crash,
+ * never the ones before.
+ * </p>
+ * <p>
+ * A search only holds the buffer lock, to append its record or swap the buffer, and
+ * never the lock of the segment, so it does not wait for a {@code write} or a
+ * {@code force}. Only if the disk falls {@value #MAX_WAITING} frames behind does the
+ * search that fills the buffer write the frames itself, which keeps the memory bounded.
+ * </p>
+ * <p>
+ * Once the log has grown to {@value #LOG_TO_SNAPSHOT} times the size of the last
+ * snapshot, a background thread starts a new segment and writes a snapshot of every
+ * counter, while the searches go on. The snapshot is read concurrently, but every
+ * increment it misses is in the new segment, which it does not replace. When the
+ * snapshot is complete, the older segments and snapshots are deleted. The trie may be
+ * searched but not changed (no insertion or deletion) while the log is open.
+ * </p>
+ * <p>
+ * The files of the log directory are {@code snapshot-N}, which covers every segment
+ * before {@code log-N}, and the segments {@code log-N}. Both start with {@link #MAGIC}
+ * and {@link #VERSION}, followed by frames:
+ * </p>
+ * <pre>
+ *   frame    payload length, CRC32 of the payload (int each, little-endian), payload
+ *   payload  records: importance and word length (varints), then the word, one to
+ *            three bytes per char (UTF-8, with the surrogates encoded separately)
+ * </pre>
+ * <p>
+ * Recovery, in {@link #open}, loads the latest snapshot, replays the segments after it
+ * up to the first incomplete or damaged frame, and starts a new segment.
+ * </p>
+ */
+public final class ImportanceLog implements Closeable {
+
+    /**
+     * When the log segment is forced to the disk.
+     */
+    public enum Fsync {
+        /** After every write of frames: a frame that has been written survives a crash of the machine. */
+        ALWAYS,
+        /** At most once per second, in the background. */
+        PERIODIC,
+        /** Never; the operating system writes the data when it sees fit. */
+        NEVER
+    }
+
+    /** The first int of every file of the log. */
+    private static final int MAGIC = 0x474F4C49;
+    /** The format version. */
+    private static final int VERSION = 1;
+    /** The bytes before the first frame of a file. */
+    private static final int FILE_HEADER = 8;
+    /** The bytes before the payload of a frame. */
+    private static final int FRAME_HEADER = 8;
+    /** The size of the record buffer, and so the largest frame written by a full buffer. */
+    private static final int BUFFER = 1 << 16;
+    /** The frames that may wait to be written before a search has to write them. */
+    private static final int MAX_WAITING = 16;
+    /** How often the buffer is written to the log, in milliseconds. */
+    static final long FLUSH_MILLIS = 100;
+    /** How often a {@link Fsync#PERIODIC} log is forced to the disk, in milliseconds. */
+    private static final long FORCE_MILLIS = 1000;
+    /** The log never triggers a snapshot before it has this many bytes. */
+    private static final long MIN_SNAPSHOT_LOG = 4 << 20;
+    /**
+     * A snapshot is taken when the log is this many times larger than the last one: the
+     * log then costs at most this many snapshot loads at recovery, and every snapshot,
+     * which walks the whole trie, pays for many more increments than it has words.
+     */
+    private static final int LOG_TO_SNAPSHOT = 4;
+
+    /** The trie whose counters are logged. */
+    private final CompressedTrie trie;
+    /** The log directory. */
+    private final Path dir;
+    /** When the log is forced to the disk. */
+    private final Fsync fsync;
+    /** The records of the frame being filled. Guarded by {@link #lock}. */
+    private Frame buffer = new Frame(BUFFER);
+    /** The full frames, in the order they must be written. Guarded by {@link #lock}. */
+    private final ArrayDeque<Frame> waiting = new ArrayDeque<>();
+    /** The current segment. */
+    private FileChannel segment;
+    /** The number of the current segment. */
+    private long sequence;
+    /** The bytes written to the log since the last snapshot. */
+    private long logged;
+    /** The size of the last snapshot. */
+    private long snapshotSize;
+    /** Whether data was written to the segment since it was last forced. */
+    private boolean dirty;
+    /** When the segment was last forced, from {@link System#nanoTime()}. */
+    private long forced = System.nanoTime();
+    /** Guards the buffer and the waiting frames; never held during I/O. */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * Guards the segment, its sequence number, sizes and force state; held while
+     * writing. It may be held when taking {@link #lock}, never the other way round.
+     */
+    private final ReentrantLock io = new ReentrantLock();
+    /** The error that stopped the background thread, if any. */
+    private volatile Error failure;
+    /** Flushes the buffer and takes the snapshots. */
+    private final ScheduledExecutorService background;
+
+    /**
+     * @param trie  The trie.
+     * @param dir   The log directory.
+     * @param fsync When the log is forced to the disk.
+     */
+    private ImportanceLog(CompressedTrie trie, Path dir, Fsync fsync) {
+        this.trie = trie;
+        this.dir = dir;
+        this.fsync = fsync;
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "importance-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Checks whether a directory holds a log to recover from.
+     *
+     * @param dir The log directory.
+     * @return {@code true} if it has a snapshot.
+     * @throws IOException If the directory cannot be listed.
+     */
+    public static boolean exists(Path dir) throws IOException {
+        return Files.isDirectory(dir) && !files(dir, "snapshot-").isEmpty();
+    }
+
+    /**
+     * Starts logging the importance counters of a trie.
+     * <p>
+     * If the directory holds a log, the counters of the words of the trie are restored
+     * from it first; otherwise a snapshot of the current counters is written. Words of
+     * the log that are not in the trie are ignored.
+     * </p>
+     *
+     * @param trie  The trie, freshly loaded from the lexicon.
+     * @param dir   The log directory; it is created if needed.
+     * @param fsync When the log is forced to the disk.
+     * @return The log, attached to the trie until it is closed.
+     * @throws IOException If the directory cannot be read or written.
+     */
+    public static ImportanceLog open(CompressedTrie trie, Path dir, Fsync fsync) throws IOException {
+        Files.createDirectories(dir);
+        ImportanceLog log = new ImportanceLog(trie, dir, fsync);
+        for (Path tmp : files(dir, "tmp-").values()) {
+            Files.delete(tmp); // A snapshot that was never completed
+        }
+
+        TreeMap<Long, Path> snapshots = files(dir, "snapshot-");
+        if (snapshots.isEmpty()) {
+            log.snapshot(); // Starts log-1 and writes snapshot-1
+        } else {
+            long base = snapshots.lastKey();
+            log.snapshotSize = Files.size(snapshots.lastEntry().getValue());
+            replay(trie, snapshots.lastEntry().getValue());
+            long last = base;
+            for (Map.Entry<Long, Path> e : files(dir, "log-").tailMap(base, true).entrySet()) {
+                log.logged += replay(trie, e.getValue());
+                last = e.getKey();
+            }
+            trie.refreshAggregates();
+            log.sequence = last + 1; // Never append after a frame that may be torn
+            log.segment = create(dir.resolve("log-" + log.sequence));
+        }
+
+        trie.log = log;
+        log.background.scheduleWithFixedDelay(log::tick, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        return log;
+    }
+
+    /**
+     * Appends the new importance of a word to the buffer, swapping the buffer first if
+     * it is full. Called by the trie after every increment.
+     *
+     * @param word       The characters of the word.
+     * @param offset     The index of the first character of the word.
+     * @param length     The number of characters of the word.
+     * @param importance The new importance.
+     * @throws IllegalStateException If an error stopped the background thread.
+     */
+    void record(CharSequence word, int offset, int length, int importance) {
+        if (failure != null) {
+            throw new IllegalStateException("The importance log " + dir + " has stopped", failure);
+        }
+        int frames = 0;
+        lock.lock();
+        try {
+            if (!buffer.fits(length)) {
+                frames = seal();
+                if (!buffer.fits(length)) { // A word longer than the whole buffer
+                    buffer = new Frame(Frame.recordSize(length));
+                }
+            }
+            buffer.put(word, offset, length, importance);
+        } finally {
+            lock.unlock();
+        }
+        if (frames >= MAX_WAITING) { // The disk falls behind: write rather than buffer without bound
+            io.lock();
+            try {
+                writeWaiting();
+            } finally {
+                io.unlock();
+            }
+        } else if (frames > 0) {
+            try {
+                background.execute(this::write);
+            } catch (RejectedExecutionException e) { // Closing: close writes the waiting frames
+            }
+        }
+    }
+
+    /**
+     * Moves the buffer, unless it is empty, to the frames waiting to be written and
+     * starts an empty one. {@link #lock} must be held.
+     *
+     * @return The number of waiting frames.
+     */
+    private int seal() {
+        if (!buffer.isEmpty()) {
+            waiting.add(buffer);
+            buffer = new Frame(BUFFER);
+        }
+        return waiting.size();
+    }
+
+    /**
+     * @return The oldest waiting frame, removed, or {@code null} if there is none.
+     */
+    private Frame nextWaiting() {
+        lock.lock();
+        try {
+            return waiting.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes the waiting frames to the segment, oldest first, and forces it if the
+     * policy says so. Errors are reported on {@code System.err}; the frames are then
+     * dropped, and logging goes on with the next one. {@link #io} must be held, and
+     * {@link #lock} must not.
+     */
+    private void writeWaiting() {
+        boolean wrote = false;
+        for (Frame frame = nextWaiting(); frame != null; frame = nextWaiting()) {
+            if (segment == null) continue; // Closed
+            try {
+                logged += frame.write(segment);
+                wrote = true;
+            } catch (IOException e) {
+                System.err.println("Error writing importance log " + dir + ": " + e.getMessage());
+            }
+        }
+        if (wrote) {
+            dirty = true;
+            if (fsync == Fsync.ALWAYS) force();
+        }
+    }
+
+    /**
+     * Writes the waiting frames, on the background thread, after a search filled the
+     * buffer.
+     */
+    private void write() {
+        io.lock();
+        try {
+            writeWaiting();
+        } catch (RuntimeException e) { // Like tick: the frames are dropped, logging goes on
+            System.err.println("Error in importance log " + dir + ": " + e);
+        } finally {
+            io.unlock();
+        }
+    }
+
+    /**
+     * Runs the periodic work of the background thread. Its errors are reported on
+     * {@code System.err}: an exception would cancel every later run of the task, so it
+     * is caught and the next tick tries again. An {@link Error} stops the log for good,
+     * and the next {@link #record} fails with it.
+     */
+    private void tick() {
+        try {
+            periodic();
+        } catch (IOException e) {
+            System.err.println("Error writing importance snapshot in " + dir + ": " + e.getMessage());
+        } catch (RuntimeException e) {
+            System.err.println("Error in importance log " + dir + ": " + e);
+        } catch (Error e) {
+            System.err.println("Importance log " + dir + " stopped: " + e);
+            failure = e;
+            throw e;
+        }
+    }
+
+    /**
+     * The periodic work: writes the buffer, forces a {@link Fsync#PERIODIC} log and
+     * takes a snapshot when the log has grown enough.
+     *
+     * @throws IOException If the snapshot cannot be written.
+     */
+    private void periodic() throws IOException {
+        lock.lock();
+        try {
+            seal();
+        } finally {
+            lock.unlock();
+        }
+        boolean full;
+        io.lock();
+        try {
+            writeWaiting();
+            if (dirty && fsync == Fsync.PERIODIC && System.nanoTime() - forced >= FORCE_MILLIS * 1_000_000) {
+                force();
+            }
+            full = segment != null && logged >= Math.max(MIN_SNAPSHOT_LOG, LOG_TO_SNAPSHOT * snapshotSize);
+        } finally {
+            io.unlock();
+        }
+        if (full) {
+            snapshot();
+        }
+    }
+
+    /**
+     * Forces the segment to the disk, reporting errors on {@code System.err}.
+     * {@link #io} must be held.
+     */
+    private void force() {
+        try {
+            segment.force(false);
+            dirty = false;
+            forced = System.nanoTime();
+        } catch (IOException e) {
+            System.err.println("Error writing importance log " + dir + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts a new segment and writes a snapshot of every counter, then deletes the
+     * files the snapshot replaces. Only starting the segment holds the I/O lock, and
+     * the searches do not take it, so they go on while the snapshot is written.
+     *
+     * @throws IOException If the files cannot be written.
+     */
+    private void snapshot() throws IOException {
+        long seq;
+        io.lock();
+        try {
+            if (segment != null) {
+                lock.lock();
+                try {
+                    seal();
+                } finally {
+                    lock.unlock();
+                }
+                writeWaiting();
+                segment.close(); // Not forced: the snapshot makes it useless
+            }
+            seq = ++sequence;
+            segment = create(dir.resolve("log-" + seq));
+            dirty = false;
+            logged = 0;
+        } finally {
+            io.unlock();
+        }
+
+        Path tmp = dir.resolve("tmp-" + seq);
+        long size;
+        try (FileChannel out = create(tmp)) {
+            Frame frame = new Frame(BUFFER);
+            CompletionCursor cursor = trie.completions("");
+            while (cursor.advance()) {
+                if (cursor.importance() == 0) continue; // The default after a load
+                CharSequence word = cursor.word();
+                if (!frame.fits(word.length())) {
+                    frame.write(out);
+                    if (!frame.fits(word.length())) frame = new Frame(Frame.recordSize(word.length()));
+                }
+                frame.put(word, 0, word.length(), cursor.importance());
+            }
+            frame.write(out);
+            out.force(false);
+            size = out.size();
+        }
+        Files.move(tmp, dir.resolve("snapshot-" + seq), StandardCopyOption.ATOMIC_MOVE);
+
+        io.lock();
+        try {
+            snapshotSize = size;
+        } finally {
+            io.unlock();
+        }
+        for (String prefix : new String[]{"log-", "snapshot-"}) {
+            for (Path old : files(dir, prefix).headMap(seq).values()) {
+                Files.delete(old);
+            }
+        }
+    }
+
+    /**
+     * Stops logging: writes the buffered records, forces the segment to the disk and
+     * detaches the log from the trie.
+     *
+     * @throws IOException If the segment cannot be written.
+     */
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES); // Lets a snapshot finish
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        io.lock();
+        try {
+            if (segment == null) return;
+            lock.lock();
+            try {
+                trie.log = null;
+                seal();
+            } finally {
+                lock.unlock();
+            }
+            writeWaiting();
+            segment.force(false);
+            segment.close();
+            segment = null;
+        } finally {
+            io.unlock();
+        }
+    }
+
+    /**
+     * Lists the numbered files of the log directory that start with a prefix.
+     *
+     * @param dir    The log directory.
+     * @param prefix The prefix, up to the number.
+     * @return The files by number.
+     * @throws IOException If the directory cannot be listed.
+     */
+    private static TreeMap<Long, Path> files(Path dir, String prefix) throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefix + "*")) {
+            for (Path p : stream) {
+                try {
+                    files.put(Long.parseLong(p.getFileName().toString().substring(prefix.length())), p);
+                } catch (NumberFormatException ignored) { // Not one of ours
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Creates a file of the log and writes its header.
+     *
+     * @param file The file.
+     * @return The channel, positioned after the header.
+     * @throws IOException If the file cannot be created.
+     */
+    private static FileChannel create(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        return channel;
+    }
+
+    /**
+     * A frame being filled with records, in a plain array with room for the header.
+     */
+    private static final class Frame {
+        /** The header, then the records. */
+        final byte[] bytes;
+        /** The end of the records. */
+        int end = FRAME_HEADER;
+
+        /**
+         * @param payload The most bytes of records.
+         */
+        Frame(int payload) {
+            bytes = new byte[FRAME_HEADER + payload];
+        }
+
+        /**
+         * @param length The number of characters of a word.
+         * @return The most bytes its record can take.
+         */
+        static int recordSize(int length) {
+            return 10 + 3 * length;
+        }
+
+        /**
+         * @param length The number of characters of a word.
+         * @return {@code true} if the record of the word surely fits.
+         */
+        boolean fits(int length) {
+            return bytes.length - end >= recordSize(length);
+        }
+
+        /**
+         * @return {@code true} if the frame has no records.
+         */
+        boolean isEmpty() {
+            return end == FRAME_HEADER;
+        }
+
+        /**
+         * Encodes a record; it must {@link #fits fit}.
+         *
+         * @param word       The characters of the word.
+         * @param offset     The index of the first character of the word.
+         * @param length     The number of characters of the word.
+         * @param importance The importance.
+         */
+        void put(CharSequence word, int offset, int length, int importance) {
+            byte[] b = bytes;
+            int p = putVarint(b, end, importance);
+            p = putVarint(b, p, length);
+            for (int i = offset; i < offset + length; i++) {
+                char c = word.charAt(i);
+                if (c < 0x80) {
+                    b[p++] = (byte) c;
+                } else if (c < 0x800) {
+                    b[p++] = (byte) (0xC0 | c >> 6);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                } else {
+                    b[p++] = (byte) (0xE0 | c >> 12);
+                    b[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+                    b[p++] = (byte) (0x80 | c & 0x3F);
+                }
+            }
+            end = p;
+        }
+
+        /**
+         * Fills in the header, writes the frame with a single {@code write} (as long as
+         * the file accepts it whole) and empties it.
+         *
+         * @param out The file.
+         * @return The bytes written.
+         * @throws IOException If the file cannot be written.
+         */
+        int write(FileChannel out) throws IOException {
+            if (isEmpty()) return 0;
+            int length = end - FRAME_HEADER;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, FRAME_HEADER, length);
+            ByteBuffer frame = ByteBuffer.wrap(bytes, 0, end).order(ByteOrder.LITTLE_ENDIAN);
+            frame.putInt(0, length).putInt(4, (int) crc.getValue());
+            while (frame.hasRemaining()) {
+                out.write(frame);
+            }
+            end = FRAME_HEADER;
+            return FRAME_HEADER + length;
+        }
+
+        /**
+         * Writes a non-negative int in 7-bit groups, lowest first.
+         *
+         * @param b     The array.
+         * @param p     Where to write.
+         * @param value The value.
+         * @return The position after the varint.
+         */
+        private static int putVarint(byte[] b, int p, int value) {
+            while ((value & ~0x7F) != 0) {
+                b[p++] = (byte) (value & 0x7F | 0x80);
+                value >>>= 7;
+            }
+            b[p++] = (byte) value;
+            return p;
+        }
+    }
+
+    /**
+     * Reads a varint written by {@link Frame#put}.
+     *
+     * @param in The buffer.
+     * @return The value.
+     */
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    /**
+     * Sets the importance of the words of a snapshot or log segment, up to its first
+     * incomplete or damaged frame.
+     *
+     * @param trie The trie.
+     * @param file The file.
+     * @return The bytes of the valid frames, including the file header.
+     * @throws IOException If the file cannot be read or is not part of a log.
+     */
+    private static long replay(CompressedTrie trie, Path file) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < FILE_HEADER || in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw new IOException("Not an importance log file: " + file);
+        }
+
+        CharSlice slice = new CharSlice();
+        char[] word = new char[64];
+        CRC32 crc = new CRC32();
+        while (in.remaining() >= FRAME_HEADER) {
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length < 0 || length > in.remaining()) break; // Torn by a crash
+            crc.reset();
+            crc.update(in.array(), in.position(), length);
+            if ((int) crc.getValue() != checksum) break;
+
+            int end = in.position() + length;
+            while (in.position() < end) {
+                int importance = getVarint(in);
+                int n = getVarint(in);
+                if (n > word.length) word = new char[Math.max(n, word.length * 2)];
+                for (int i = 0; i < n; i++) {
+                    int b = in.get() & 0xFF;
+                    if (b < 0x80) {
+                        word[i] = (char) b;
+                    } else if (b < 0xE0) {
+                        word[i] = (char) ((b & 0x1F) << 6 | in.get() & 0x3F);
+                    } else {
+                        word[i] = (char) ((b & 0x0F) << 12 | (in.get() & 0x3F) << 6 | in.get() & 0x3F);
+                    }
+                }
+                CompressedTrie.CompressedTrieNode node = trie.findWord(slice.wrap(word, 0, n));
+                if (node != null) {
+                    node.importance = importance;
+                }
+            }
+        }
+        return in.position();
+    }
+
+    /**
+     * Compares the recovery from the log with a rescan of the text.
+     * <p>
+     * The dictionary is loaded and the text ingested, then the log is opened and a
+     * number of random dictionary words are searched, timed with and without the log.
+     * A second trie is then loaded and recovered from the log, and its counters are
+     * checked against the first one.
+     * </p>
+     *
+     * @param args The dictionary file, the text file and, optionally, the number of
+     *             logged searches (default 2 000 000) and the fsync policy (default PERIODIC).
+     * @throws IOException If a file cannot be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        Path dictionary = Path.of(args[0]);
+        int searches = args.length > 2 ? Integer.parseInt(args[2]) : 2_000_000;
+        Fsync fsync = args.length > 3 ? Fsync.valueOf(args[3]) : Fsync.PERIODIC;
+
+        CompressedTrie trie = BulkLoader.load(dictionary);
+        long start = System.nanoTime();
+        TextIngester.ingest(trie, Path.of(args[1]), Runtime.getRuntime().availableProcessors());
+        double rescan = (System.nanoTime() - start) / 1e6;
+
+        List<String> words = new ArrayList<>();
+        CompletionCursor cursor = trie.completions("");
+        while (cursor.advance()) {
+            words.add(cursor.token());
+        }
+        String[] queries = new String[searches];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < searches; i++) {
+            queries[i] = words.get(random.nextInt(words.size()));
+        }
+
+        start = System.nanoTime();
+        for (String q : queries) trie.search(q);
+        double plain = (System.nanoTime() - start) / 1e6;
+
+        Path dir = Files.createTempDirectory("importance");
+        ImportanceLog log = open(trie, dir, fsync);
+        start = System.nanoTime();
+        for (String q : queries) trie.search(q);
+        double logged = (System.nanoTime() - start) / 1e6;
+        log.close();
+
+        long bytes = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) bytes += Files.size(p);
+        }
+
+        CompressedTrie recovered = BulkLoader.load(dictionary);
+        start = System.nanoTime();
+        open(recovered, dir, fsync).close();
+        double recovery = (System.nanoTime() - start) / 1e6;
+
+        for (String w : words) {
+            if (trie.findWord(w).importance != recovered.findWord(w).importance) {
+                throw new AssertionError("Different importance for " + w);
+            }
+        }
+        System.out.printf("%d searches: %.0f ms without the log, %.0f ms with it (%s), %d bytes on disk%n",
+                searches, plain, logged, fsync, bytes);
+        System.out.printf("text rescan: %.0f ms; recovery from the log: %.0f ms; counters identical%n",
+                rescan, recovery);
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) Files.delete(p);
+        }
+        Files.delete(dir);
+    }
+}
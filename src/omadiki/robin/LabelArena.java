@@ -0,0 +1,137 @@
+package omadiki.robin;
+
+import java.util.Arrays;
+
+/**
+ * A growable character buffer that holds the labels of all the edges of a
+ * {@link CompressedTrie}.
+ * <p>
+ * Each edge only stores an (offset, length) slice into this buffer instead of
+ * its own {@code String}, so splitting an edge is just a change of offsets and
+ * no characters are copied. Labels that become unreachable (e.g. after a delete)
+ * are counted as dead, and the owning trie compacts the arena once they make up
+ * a large part of it.
+ */
+final class LabelArena {
+    /** Initial capacity of the buffer. */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The characters of all labels, back to back. */
+    char[] chars;
+    /** Number of characters used in {@code chars}. */
+    int size;
+    /** Number of characters in {@code chars} that no edge refers to any more. */
+    int dead;
+
+    /**
+     * Constructs an empty arena with a small initial capacity.
+     */
+    LabelArena() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty arena able to hold {@code capacity} characters without growing.
+     *
+     * @param capacity The initial capacity.
+     */
+    LabelArena(int capacity) {
+        chars = new char[Math.max(capacity, 1)];
+        size = 0;
+        dead = 0;
+    }
+
+    /**
+     * Appends the region {@code [from, to)} of a word to the arena.
+     *
+     * @param word The characters to append.
+     * @param from The index of the first character.
+     * @param to   The end (exclusive) of the region.
+     * @return The offset at which the characters were stored.
+     */
+    int append(CharSequence word, int from, int to) {
+        int offset = reserve(to - from);
+        for (int i = from; i < to; i++) {
+            chars[size++] = word.charAt(i);
+        }
+        return offset;
+    }
+
+    /**
+     * Appends the region {@code [from, from + length)} of a char array to the arena.
+     *
+     * @param source The characters to append.
+     * @param from   The index of the first character.
+     * @param length The number of characters.
+     * @return The offset at which the characters were stored.
+     */
+    int append(char[] source, int from, int length) {
+        int offset = reserve(length);
+        System.arraycopy(source, from, chars, offset, length);
+        size += length;
+        return offset;
+    }
+
+    /**
+     * Makes sure there is room for {@code length} more characters.
+     *
+     * @param length The number of characters about to be appended.
+     * @return The offset where they will be stored.
+     */
+    private int reserve(int length) {
+        if (size + length > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, size + length));
+        }
+        return size;
+    }
+
+    /**
+     * Marks {@code length} characters as no longer referenced by any edge.
+     *
+     * @param length The number of dead characters.
+     */
+    void release(int length) {
+        dead += length;
+    }
+
+    /**
+     * Checks if dead characters take up more than half of the arena.
+     *
+     * @return {@code true} if the arena should be compacted.
+     */
+    boolean needsCompaction() {
+        return dead > 1024 && dead * 2 > size;
+    }
+
+    /**
+     * Finds the length of the common prefix between a label slice and the region
+     * {@code [from, to)} of a word.
+     *
+     * @param offset The offset of the label.
+     * @param length The length of the label.
+     * @param word   The word.
+     * @param from   The index in {@code word} to compare from.
+     * @param to     The end (exclusive) of the region of {@code word}.
+     * @return The length of the longest common prefix.
+     */
+    int common(int offset, int length, CharSequence word, int from, int to) {
+        int i = 0;
+        int minLen = Math.min(length, to - from);
+        while (i < minLen && chars[offset + i] == word.charAt(from + i)) {
+            i++;
+        }
+
+        return i;
+    }
+
+    /**
+     * Creates a {@code String} of a label slice.
+     *
+     * @param offset The offset of the label.
+     * @param length The length of the label.
+     * @return The label as a string.
+     */
+    String toString(int offset, int length) {
+        return new String(chars, offset, length);
+    }
+}
@@ -0,0 +1,412 @@
+package omadiki.robin;
+
+import omadiki.Lexicon;
+import omadiki.MinHeap;
+import omadiki.Pair;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A {@link CompressedTrie} that follows the changes of its dictionary file while it
+ * serves queries.
+ * <p>
+ * When the file changes, the new words are read, sorted and merged against the words of
+ * the trie, which a {@link CompletionCursor} yields in the same order, so no second copy
+ * of the dictionary is kept. The merge yields the added and the removed words; only
+ * those are applied to the trie, with {@code delete} and {@code insert}, so the words
+ * that stayed keep their importance. Reading and comparing the file happens without
+ * holding any lock, since only the reload itself changes the shape of the trie and the
+ * queries in between only change importance counters; the trie is only
+ * locked while the diff is applied, in batches of {@value #BATCH} words, so the time
+ * the queries can be held up depends on the size of the diff and not on the size of
+ * the dictionary.
+ * </p>
+ * <p>
+ * The trie is guarded by a fair read-write lock: the queries that only read take the
+ * read lock, while {@link #search(CharSequence)}, which updates the importance, and the
+ * batches of the diff take the write lock. The lock is fair so that the queries that
+ * wait while a batch is applied get in before the next batch.
+ * </p>
+ */
+public final class LiveLexicon implements Lexicon, Closeable {
+
+    /** The number of words applied to the trie while holding the lock once. */
+    static final int BATCH = 256;
+    /** How long the file must stay unchanged before it is read, in milliseconds. */
+    private static final long SETTLE_MILLIS = 200;
+
+    /** The trie. */
+    private final CompressedTrie trie;
+    /** The dictionary file. */
+    private final Path file;
+    /** Guards the trie. */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+    /** The watch service, or {@code null} if the file is not watched. */
+    private WatchService watcher;
+
+    /**
+     * Wraps a trie loaded from a dictionary file. The trie must not be used directly
+     * from then on.
+     *
+     * @param trie The trie, holding the words of the file.
+     * @param file The dictionary file.
+     */
+    public LiveLexicon(CompressedTrie trie, Path file) {
+        this.trie = trie;
+        this.file = file;
+    }
+
+    /**
+     * Starts a daemon thread that reloads the dictionary whenever its file is modified
+     * or replaced. Errors while reloading are reported on {@code System.err}, and the
+     * lexicon keeps serving the words it had.
+     *
+     * @throws IOException If the directory of the file cannot be watched.
+     */
+    public synchronized void watch() throws IOException {
+        if (watcher != null) return;
+        Path dir = file.toAbsolutePath().getParent();
+        watcher = dir.getFileSystem().newWatchService();
+        dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+        Thread thread = new Thread(() -> watchLoop(watcher), "lexicon-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for changes to the file and reloads it once it has settled, until the
+     * watch service is closed.
+     *
+     * @param watcher The watch service.
+     */
+    private void watchLoop(WatchService watcher) {
+        try {
+            while (true) {
+                if (!changed(watcher.take())) continue;
+                // Editors write in several steps: wait until the events stop
+                WatchKey key;
+                while ((key = watcher.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed(key);
+                }
+                try {
+                    long start = System.nanoTime();
+                    Pair<Integer, Integer> diff = reload();
+                    System.err.printf("Reloaded %s: %d words added, %d removed in %.1f ms%n", file,
+                            diff.getLeft(), diff.getRight(), (System.nanoTime() - start) / 1e6);
+                } catch (IOException | InternalError e) { // InternalError: the file was truncated while mapped
+                    System.err.println("Error reloading " + file + ": " + e.getMessage());
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // Closed: stop watching
+        }
+    }
+
+    /**
+     * Consumes the events of a watch key.
+     *
+     * @param key The key.
+     * @return {@code true} if one of the events concerns the dictionary file.
+     */
+    private boolean changed(WatchKey key) {
+        boolean ours = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            ours |= event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context());
+        }
+        key.reset();
+        return ours;
+    }
+
+    /**
+     * Reads the dictionary file again and applies the difference with the words of the
+     * trie: the removed words are deleted from the trie and the new ones inserted.
+     * Queries are served between the batches of the update.
+     *
+     * @return The number of words added and the number of words removed.
+     * @throws IOException If the file cannot be read.
+     */
+    public synchronized Pair<Integer, Integer> reload() throws IOException {
+        String[] next = BulkLoader.readWords(file);
+        Arrays.parallelSort(next);
+        int n = 0;
+        for (int i = 0; i < next.length; i++) { // Drop the duplicates
+            if (n == 0 || !next[i].equals(next[n - 1])) next[n++] = next[i];
+        }
+        next = Arrays.copyOf(next, n);
+
+        // Merge the words of the trie, alphabetical as String.compareTo orders them, with
+        // the new ones into the words to remove and the words to add
+        List<String> removed = new ArrayList<>();
+        List<String> added = new ArrayList<>();
+        CompletionCursor cursor = trie.completions("");
+        boolean more = cursor.advance();
+        int j = 0;
+        while (more || j < next.length) {
+            int cmp = !more ? 1 : j == next.length ? -1 : CharSequence.compare(cursor.word(), next[j]);
+            if (cmp < 0) {
+                removed.add(cursor.token());
+                more = cursor.advance();
+            } else if (cmp > 0) {
+                added.add(next[j++]);
+            } else {
+                more = cursor.advance();
+                j++;
+            }
+        }
+
+        apply(removed, false);
+        apply(added, true);
+        return new Pair<>(added.size(), removed.size());
+    }
+
+    /**
+     * Inserts or deletes words, holding the write lock for one batch at a time.
+     *
+     * @param diff   The words.
+     * @param insert {@code true} to insert them, {@code false} to delete them.
+     */
+    private void apply(List<String> diff, boolean insert) {
+        for (int from = 0; from < diff.size(); from += BATCH) {
+            lock.writeLock().lock();
+            try {
+                for (String w : diff.subList(from, Math.min(diff.size(), from + BATCH))) {
+                    if (insert) {
+                        trie.insert(w);
+                    } else {
+                        trie.delete(w);
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Stops watching the file. The lexicon keeps serving its current words.
+     *
+     * @throws IOException If the watch service cannot be closed.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (watcher != null) {
+            watcher.close();
+            watcher = null;
+        }
+    }
+
+    /**
+     * Searches for a word and, if it is found, increments its importance.
+     *
+     * @param word The word to search for.
+     * @return {@code true} if the word exists, {@code false} otherwise.
+     */
+    @Override
+    public boolean search(CharSequence word) {
+        lock.writeLock().lock();
+        try {
+            return trie.search(word);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the {@code k} most frequent words starting with the given prefix.
+     *
+     * @param prefix The starting prefix.
+     * @param k      The maximum number of words to return, or -1 for all of them.
+     * @return A {@link MinHeap} containing the words and their frequencies.
+     */
+    @Override
+    public MinHeap getWordsWithPrefix(String prefix, int k) {
+        lock.readLock().lock();
+        try {
+            return trie.getWordsWithPrefix(prefix, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the words that start with the given prefix.
+     *
+     * @param prefix The prefix.
+     * @return The number of words.
+     */
+    @Override
+    public int countWordsWithPrefix(String prefix) {
+        lock.readLock().lock();
+        try {
+            return trie.countWordsWithPrefix(prefix);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Computes the average importance of the words that start with the given prefix.
+     *
+     * @param prefix The prefix.
+     * @return The average importance, or 0 if no word starts with the prefix.
+     */
+    @Override
+    public float getAverageFrequency(String prefix) {
+        lock.readLock().lock();
+        try {
+            return trie.getAverageFrequency(prefix);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Predicts the next letter based on the highest average frequency of words
+     * that follow the prefix.
+     *
+     * @param prefix The current input prefix.
+     * @return The predicted next character, or '\0' if no prediction can be made.
+     */
+    @Override
+    public char predictNextLetter(String prefix) {
+        lock.readLock().lock();
+        try {
+            return trie.predictNextLetter(prefix);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Predicts the most likely continuation of the prefix.
+     *
+     * @param prefix The current input prefix.
+     * @param n      The maximum number of characters to predict, or -1 for no limit.
+     * @return The predicted characters that follow the prefix; empty if no prediction can be made.
+     */
+    @Override
+    public String predictCompletion(String prefix, int n) {
+        lock.readLock().lock();
+        try {
+            return trie.predictCompletion(prefix, n);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks live reloading on a copy of a dictionary: the copy is rewritten with
+     * growing diffs while another thread keeps querying, and after every reload the
+     * removed words must be gone, the added ones present and the importance of the
+     * others unchanged. The reload times show that the work under the lock follows the
+     * size of the diff; the last step goes through the file watcher.
+     *
+     * @param args The dictionary file.
+     * @throws Exception If the files cannot be used or a check fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Path copy = Files.createTempFile("lexicon", ".txt");
+        Files.copy(Path.of(args[0]), copy, StandardCopyOption.REPLACE_EXISTING);
+        LiveLexicon live = new LiveLexicon(BulkLoader.load(copy), copy);
+        String[] base = words(live);
+        for (int i = 0; i < base.length; i += 7) {
+            live.search(base[i]); // Some importance that must survive the reloads
+        }
+
+        Thread reader = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                live.getWordsWithPrefix("co", 5);
+                live.countWordsWithPrefix("a");
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        System.out.println("changed\tadded\tremoved\treload ms");
+        for (int changes : new int[]{10, 1_000, 100_000}) {
+            List<String> lines = new ArrayList<>(List.of(base));
+            int step = Math.max(1, base.length / changes);
+            for (int i = 1, c = 0; i < base.length && c < changes; i += step) {
+                if (i % 7 != 0) { // Keep the searched words
+                    lines.set(i, base[i] + "qx"); // One word removed and one added
+                    c += 2;
+                }
+            }
+            Files.write(copy, lines);
+
+            long start = System.nanoTime();
+            Pair<Integer, Integer> diff = live.reload();
+            System.out.printf("%d\t%d\t%d\t%.1f%n", changes, diff.getLeft(), diff.getRight(),
+                    (System.nanoTime() - start) / 1e6);
+            check(live, lines, base);
+        }
+        reader.interrupt();
+
+        live.watch();
+        Files.write(copy, List.of(base)); // Back to the original words, through the watcher
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!Arrays.equals(words(live), base) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        check(live, List.of(base), base);
+        live.close();
+        Files.delete(copy);
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * @param live The lexicon.
+     * @return The words of its trie, in alphabetical order.
+     */
+    private static String[] words(LiveLexicon live) {
+        live.lock.readLock().lock();
+        try {
+            List<String> words = new ArrayList<>();
+            CompletionCursor cursor = live.trie.completions("");
+            while (cursor.advance()) {
+                words.add(cursor.token());
+            }
+            return words.toArray(new String[0]);
+        } finally {
+            live.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Checks the trie against the words of the file.
+     *
+     * @param live  The lexicon.
+     * @param lines The words of the file.
+     * @param base  The words it was loaded with; every seventh one was searched once.
+     */
+    private static void check(LiveLexicon live, List<String> lines, String[] base) {
+        String[] expected = lines.toArray(new String[0]);
+        Arrays.sort(expected);
+        if (!Arrays.equals(words(live), expected) || live.countWordsWithPrefix("") != expected.length) {
+            throw new AssertionError("The trie does not hold the words of the file");
+        }
+        for (int i = 0; i < base.length; i++) {
+            CompressedTrie.CompressedTrieNode node = live.trie.findWord(base[i]);
+            if (Arrays.binarySearch(expected, base[i]) < 0) {
+                if (node != null) throw new AssertionError("Removed word still present: " + base[i]);
+            } else if (node == null || node.importance != (i % 7 == 0 ? 1 : 0)) {
+                throw new AssertionError("Wrong importance for " + base[i]);
+            }
+        }
+    }
+}
@@ -4,98 +4,155 @@ package omadiki.robin;
  * Implements a Robin Hood Hashing open addressing hash map.
  * This class is designed to store {@code Edge} objects (which represent trie
  * path segments) and uses Robin Hood insertion to minimize variance in probe lengths.
+ * It is the {@link ChildTable} kind of the wide nodes whose keys are not all
+ * lowercase letters, and it grows without limit.
  * <p>
  * The hashing mechanism assumes labels start with lowercase English letters
  * and uses the first character for hash calculation.
+ * <p>
+ * Next to the slot array, the key (first character) and the probe distance of every
+ * slot are packed in one {@code int[]}, so a lookup scans contiguous ints and only
+ * loads the {@code Edge} of the slot whose key matches.
  */
-public class RobinHoodHashing {
-
-    /** A sequence of prime numbers used for resizing the hash table (rehash operation). */
-    private static int[] PRIMES = {3, 7, 11, 17, 23, 29};
+public class RobinHoodHashing extends ChildTable {
 
     /**
-     * Represents a compressed trie edge, which holds a string label
-     * (the compressed path segment) and a pointer to the child trie node.
-     * This structure is shared with the list-based trie implementation but
-     * includes an {@code occupied} flag for deletion handling (although deletion
-     * is not fully implemented here).
+     * A sequence of prime numbers used for resizing the hash table (rehash operation).
+     * Past the last one, the capacity doubles.
      */
-    protected static class Edge {
-        /** The string label of the edge, which can be one or more characters. */
-        String label;
-        /** The child node that this edge points to. */
-        CompressedTrie.CompressedTrieNode child;
-        /** Flag indicating if the slot is currently occupied by a valid entry. */
-        boolean occupied = true;
-
-        /**
-         * Constructs a new Edge with the specified label and child node.
-         *
-         * @param label The compressed string segment for this edge.
-         * @param child The destination node in the trie.
-         */
-        public Edge(String label, CompressedTrie.CompressedTrieNode child) {
-            this.label = label;
-            this.child = child;
-        }
-    }
+    private static int[] PRIMES = {3, 7, 11, 17, 23, 29, 59, 127, 257};
 
     /** The array representing the hash table. */
     Edge[] table;
+    /**
+     * The key and probe distance of every slot, packed as {@code (distance + 1) << 16 | key}
+     * where the key is the first character of the label; 0 marks an empty slot.
+     */
+    private int[] slots;
     /** The current capacity of the hash table. */
     int capacity;
-    /** The number of elements currently stored in the hash table. */
-    int size;
-    /** The maximum probe length observed (distance from home slot). */
-    int maxProbeLength;
 
     /**
      * Constructs a new RobinHoodHashing table with a small initial capacity (3).
      */
     public RobinHoodHashing() {
-        this.capacity = 3;
+        this(0);
+    }
+
+    /**
+     * Constructs a new RobinHoodHashing table that can hold {@code expected} edges
+     * without ever needing a rehash.
+     *
+     * @param expected The number of edges that will be inserted.
+     */
+    public RobinHoodHashing(int expected) {
+        int i = 0;
+        // Smallest prime whose load threshold stays above the expected size
+        while (i < PRIMES.length - 1 && expected >= (int) (PRIMES[i] * 0.9f)) {
+            i++;
+        }
+        this.capacity = PRIMES[i];
         table = new Edge[this.capacity];
+        slots = new int[this.capacity];
         size = 0;
-        maxProbeLength = 0;
     }
 
     /**
-     * Calculates the hash for a given string based on its first character.
+     * Calculates the hash for a given edge based on the first character of its label.
      * Assumes the first character is a lowercase English letter ('a' to 'z').
      *
-     * @param s The string (usually the edge label) to hash.
+     * @param c The first character of an edge label.
      * @return The initial hash table index.
      */
-    private int hash(String s) {
-        return (s.charAt(0) - 'a') % capacity;
+    private int hash(char c) {
+        return Math.floorMod(c - 'a', capacity);
     }
 
     /**
-     * Retrieves an edge whose label starts with the same character as the input string.
-     * Searches starting from the home index and continues up to {@code maxProbeLength}.
+     * Retrieves the edge whose label starts with the given character.
+     * Searches starting from the home index and stops at an empty slot, or at a slot
+     * whose edge is closer to its own home than the key would be (with Robin Hood
+     * insertion, the key cannot be further on).
      *
-     * @param s The string whose first character is used for searching.
+     * @param c The first character of the wanted edge label.
      * @return The matching {@code Edge}, or {@code null} if not found.
      */
-    Edge search(String s) {
-        if (s.isEmpty()) {
-            return null;
+    Edge search(char c) {
+        int index = find(c);
+        return index < 0 ? null : table[index];
+    }
+
+    /**
+     * Finds the slot of a key.
+     *
+     * @param c The first character of an edge label.
+     * @return The slot, or -1 if no edge has the key.
+     */
+    private int find(char c) {
+        int index = hash(c);
+        // Linear probing from the home slot, over the packed slots only
+        for (int probe = 1; slots[index] >>> 16 >= probe; probe++) {
+            if ((char) slots[index] == c) return index;
+            if (++index == capacity) index = 0;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Inserts an edge.
+     *
+     * @param edge The edge.
+     * @return This table.
+     */
+    @Override
+    ChildTable put(Edge edge) {
+        insert(edge);
+        return this;
+    }
+
+    /**
+     * Removes an edge with backward-shift deletion: the edges that follow it in the
+     * same probe run move one slot back, so no tombstone is left and the probe
+     * distances stay exact. A table that becomes small enough is turned into a
+     * sorted one.
+     *
+     * @param c The first character of the label.
+     * @return The table holding the edges from now on.
+     */
+    @Override
+    ChildTable remove(char c) {
+        int index = find(c);
+        if (index < 0) {
+            return this;
         }
 
-        int index = hash(s);
-        Edge e = table[index];
-        if (e == null) return null;
-        // Check home slot for immediate match
-        if (e.label.charAt(0) == s.charAt(0)) return e;
-
-        // Linear probing
-        for (int i = index; circularDiff(i, index) <= maxProbeLength+1; index = (index + 1) % capacity) {
-            if (table[index] == null) break;
-            if (!table[index].occupied) continue;
-            if (table[index].label.charAt(0) == s.charAt(0)) return table[index];
+        int next = (index + 1) % capacity;
+        while (slots[next] >>> 16 > 1) { // The next edge is away from its home slot
+            table[index] = table[next];
+            slots[index] = slots[next] - (1 << 16);
+            index = next;
+            next = (next + 1) % capacity;
         }
+        table[index] = null;
+        slots[index] = 0;
+        size--;
+        return shrink(this);
+    }
+
+    @Override
+    int slots() {
+        return capacity;
+    }
+
+    @Override
+    Edge slot(int i) {
+        return table[i];
+    }
 
-        return null;
+    @Override
+    long bytes() {
+        return 24 + (16 + 4L * capacity) + (16 + 4L * capacity);
     }
 
     /**
@@ -110,48 +167,43 @@ public class RobinHoodHashing {
             return;
         }
 
-        int index = hash(edge.label);
-        Edge cur = table[index];
-        int curProbeLength = cur == null ? 0 : circularDiff(hash(cur.label), index);
+        int index = hash(edge.first);
         int probeLength = 0;
-        while (cur != null) {
-            // Robin Hood Check
+        while (slots[index] != 0) {
+            // Robin Hood Check: the richer edge (closer to its home) gives up its slot
+            int curProbeLength = (slots[index] >>> 16) - 1;
             if (probeLength > curProbeLength) {
-                table[index] = edge;
+                Edge cur = table[index];
+                place(index, edge, probeLength);
                 edge = cur;
                 probeLength = curProbeLength;
             }
 
             index = (index+1) % capacity;
             probeLength++;
-            cur = table[index];
-            curProbeLength = cur == null ? 0 : circularDiff(hash(cur.label), index);
         }
 
-        // Slot found (cur == null), place the current edge (which may be the original or a displaced one)
-        if (probeLength > maxProbeLength) {
-            maxProbeLength = probeLength;
-        }
-
-        table[index] = edge;
+        // Slot found (empty), place the current edge (which may be the original or a displaced one)
+        place(index, edge, probeLength);
         size++;
 
         // Trigger rehash if load factor exceeds 90%
-        if (size >= (int) (capacity * 0.9f) && size < 26) {
+        if (size >= (int) (capacity * 0.9f)) {
             rehash();
         }
     }
 
     /**
-     * Calculates the circular difference between two indices, representing the
-     * probe length (distance from the home index) in a circular array.
+     * Puts an edge in a slot and records its key and probe distance, so that probing
+     * never has to load an edge or recompute the home slot of its key.
      *
-     * @param a The home index (starting point).
-     * @param b The current index (ending point).
-     * @return The circular distance from {@code a} to {@code b}.
+     * @param index       The slot.
+     * @param edge        The edge.
+     * @param probeLength The distance of the slot from the home slot of the edge.
      */
-    private int circularDiff(int a, int b) {
-        return a <= b ? b-a : capacity-a+b;
+    private void place(int index, Edge edge, int probeLength) {
+        table[index] = edge;
+        slots[index] = (probeLength + 1) << 16 | edge.first;
     }
 
     /**
@@ -161,17 +213,17 @@ public class RobinHoodHashing {
     private void rehash() {
         int i;
         // Find the current capacity in the PRIMES array
-        for (i = 0; i <= PRIMES.length; i++) {
+        for (i = 0; i < PRIMES.length; i++) {
             if (PRIMES[i] == capacity) {
                 break;
             }
         }
         int oldCapacity = capacity;
-        capacity = PRIMES[i+1];
+        capacity = i + 1 < PRIMES.length ? PRIMES[i + 1] : capacity * 2 + 1;
 
         Edge[] oldTable = table;
         table = new Edge[capacity];
-        maxProbeLength = 0;
+        slots = new int[capacity];
         size = 0;
 
         for (int j = 0; j < oldCapacity; j++) {
@@ -184,12 +236,13 @@ public class RobinHoodHashing {
      */
     public static void main(String[] args) {
         RobinHoodHashing h = new RobinHoodHashing();
-        h.insert(new Edge("gay", null));
-        h.insert(new Edge("huy", null));
-        h.insert(new Edge("giu", null));
+        h.insert(new Edge('g', 0, 3, null));
+        h.insert(new Edge('h', 3, 3, null));
+        h.insert(new Edge('n', 6, 3, null));
+        h.remove('g');
 
         for (int i = 0; i < h.capacity; i++) {
-            System.out.println(i + ": " + (h.table[i] == null ? "null" : h.table[i].label));
+            System.out.println(i + ": " + (h.table[i] == null ? "null" : h.table[i].first + "@" + h.table[i].offset));
         }
     }
 }
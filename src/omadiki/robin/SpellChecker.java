@@ -0,0 +1,236 @@
+package omadiki.robin;
+
+import omadiki.DictionaryWord;
+import omadiki.Pair;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Checks a text file against the words of a {@link CompressedTrie} and reports the
+ * words that are not in it.
+ * <p>
+ * The text is read once, by the {@link TextIngester}, so the importance counters of the
+ * known words are increased exactly like {@code parseTxt} does, while every unknown word
+ * is counted together with the position of its first occurrence. Once the whole text is
+ * read, each distinct unknown word gets its best corrections from
+ * {@link CompressedTrie#fuzzySearch(CharSequence, int, int)}, which then rank by the
+ * importance the text just gave to the words.
+ * </p>
+ * <p>
+ * The report has one JSON object per line and per unknown word, most frequent first:
+ * <pre>
+ * {"word":"teh","count":12,"first":1045,"suggestions":[{"word":"the","distance":1,"importance":3400}]}
+ * </pre>
+ * {@code first} is the byte offset of the first occurrence in the file. Words are runs of
+ * ASCII letters, so nothing in a line needs escaping.
+ * </p>
+ */
+public final class SpellChecker {
+    /** The maximum edit distance of a suggestion. */
+    private static final int MAX_EDITS = 2;
+    /** The number of suggestions per unknown word. */
+    private static final int SUGGESTIONS = 3;
+
+    /**
+     * The occurrences of one unknown word.
+     */
+    static final class Miss {
+        /** How many times the word occurs. */
+        long count;
+        /** The byte offset of its first occurrence. */
+        long first;
+
+        /**
+         * @param first The byte offset of the first occurrence.
+         */
+        Miss(long first) {
+            this.first = first;
+        }
+
+        /**
+         * Counts an occurrence of an unknown word.
+         *
+         * @param misses The unknown words so far.
+         * @param word   The word; it is copied only the first time it is seen.
+         * @param offset The byte offset of the occurrence.
+         */
+        static void record(Map<String, Miss> misses, CharSequence word, long offset) {
+            misses.computeIfAbsent(word.toString(), w -> new Miss(offset)).count++;
+        }
+
+        /**
+         * Adds the unknown words of another part of the text.
+         *
+         * @param into  The unknown words that receive the others.
+         * @param other The unknown words to add.
+         */
+        static void mergeInto(Map<String, Miss> into, Map<String, Miss> other) {
+            for (Map.Entry<String, Miss> e : other.entrySet()) {
+                Miss m = into.get(e.getKey());
+                if (m == null) {
+                    into.put(e.getKey(), e.getValue());
+                } else {
+                    m.count += e.getValue().count;
+                    m.first = Math.min(m.first, e.getValue().first);
+                }
+            }
+        }
+    }
+
+    /** The trie holding the known words. */
+    private final CompressedTrie trie;
+    /** The number of threads reading the text and computing the suggestions. */
+    private final int threads;
+
+    /** The number of words of the last text checked. */
+    private long tokens;
+    /** The number of unknown words of the last text checked, with repetitions. */
+    private long occurrences;
+    /** The number of distinct unknown words of the last text checked. */
+    private int distinct;
+    /** The time it took to read the last text, in nanoseconds. */
+    private long readNanos;
+    /** The time it took to compute the suggestions of the last text, in nanoseconds. */
+    private long suggestNanos;
+
+    /**
+     * @param trie    The trie holding the known words. Its importance counters are
+     *                increased by the texts checked.
+     * @param threads The number of threads reading a text and computing its suggestions.
+     */
+    public SpellChecker(CompressedTrie trie, int threads) {
+        this.trie = trie;
+        this.threads = threads;
+    }
+
+    /**
+     * Checks a text file and writes the report of its unknown words.
+     *
+     * @param text The text file.
+     * @param out  Receives the report, one JSON object per line.
+     * @return The number of distinct unknown words.
+     * @throws IOException If the text cannot be read or the report cannot be written.
+     */
+    public int check(Path text, Writer out) throws IOException {
+        long start = System.nanoTime();
+        Map<String, Miss> misses = new HashMap<>();
+        tokens = TextIngester.ingest(trie, text, threads, misses);
+        readNanos = System.nanoTime() - start;
+
+        List<Map.Entry<String, Miss>> sorted = new ArrayList<>(misses.entrySet());
+        sorted.sort((a, b) -> a.getValue().count != b.getValue().count
+                ? Long.compare(b.getValue().count, a.getValue().count)
+                : a.getKey().compareTo(b.getKey()));
+        occurrences = 0;
+        for (Map.Entry<String, Miss> e : sorted) {
+            occurrences += e.getValue().count;
+        }
+        distinct = sorted.size();
+
+        // The suggestions only read the trie, so the distinct words are shared by the threads
+        start = System.nanoTime();
+        String[] lines = new String[sorted.size()];
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.submit(() -> IntStream.range(0, lines.length).parallel()
+                    .forEach(i -> lines[i] = line(sorted.get(i).getKey(), sorted.get(i).getValue()))).join();
+        } finally {
+            pool.shutdown();
+        }
+        suggestNanos = System.nanoTime() - start;
+
+        for (String line : lines) {
+            out.write(line);
+            out.write('\n');
+        }
+        out.flush();
+        return distinct;
+    }
+
+    /**
+     * Builds the report line of an unknown word.
+     *
+     * @param word The word.
+     * @param miss Its occurrences.
+     * @return The JSON object, without the line end.
+     */
+    private String line(String word, Miss miss) {
+        StringBuilder line = new StringBuilder(96);
+        line.append("{\"word\":\"").append(word)
+                .append("\",\"count\":").append(miss.count)
+                .append(",\"first\":").append(miss.first)
+                .append(",\"suggestions\":[");
+        List<Pair<DictionaryWord, Integer>> suggestions = trie.fuzzySearch(word, MAX_EDITS, SUGGESTIONS);
+        for (int i = 0; i < suggestions.size(); i++) {
+            DictionaryWord w = suggestions.get(i).getLeft();
+            line.append(i == 0 ? "" : ",")
+                    .append("{\"word\":\"").append(w.getWord())
+                    .append("\",\"distance\":").append(suggestions.get(i).getRight())
+                    .append(",\"importance\":").append(w.getImportance()).append('}');
+        }
+        return line.append("]}").toString();
+    }
+
+    /**
+     * @return The counts and the throughput of the last text checked, in one line.
+     */
+    public String summary() {
+        return String.format("%d words, %d unknown (%d distinct); read at %.0f words/s, %.0f suggestions/s",
+                tokens, occurrences, distinct,
+                tokens / Math.max(readNanos / 1e9, 1e-9), distinct / Math.max(suggestNanos / 1e9, 1e-9));
+    }
+
+    /**
+     * Checks text files against a dictionary and prints their reports, each followed
+     * by its summary; {@code files/missing.txt} and {@code files/test/bigText.txt}
+     * against {@code files/test/bigDict.txt} are the reference runs.
+     * <p>
+     * A text whose expected report is committed next to it, as {@code name.spell.jsonl}
+     * for {@code name.txt}, is checked against it instead of printed, so the reference
+     * runs are regression tests.
+     * </p>
+     *
+     * @param args The dictionary file and one or more text files.
+     * @throws IOException If a file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out));
+        for (int i = 1; i < args.length; i++) {
+            Path text = Path.of(args[i]);
+            SpellChecker checker = new SpellChecker(BulkLoader.load(Path.of(args[0])),
+                    Runtime.getRuntime().availableProcessors());
+            out.write("# " + text + " (" + Files.size(text) + " bytes)\n");
+            Path expected = text.resolveSibling(text.getFileName().toString().replaceFirst("\\.txt$", "") + ".spell.jsonl");
+            if (Files.exists(expected)) {
+                StringWriter report = new StringWriter();
+                checker.check(text, report);
+                List<String> want = Files.readAllLines(expected);
+                List<String> got = List.of(report.toString().split("\n"));
+                for (int l = 0; l < Math.max(want.size(), got.size()); l++) {
+                    String w = l < want.size() ? want.get(l) : "<end>";
+                    String g = l < got.size() ? got.get(l) : "<end>";
+                    if (!w.equals(g)) {
+                        throw new AssertionError(expected + " line " + (l + 1) + ": expected " + w + ", got " + g);
+                    }
+                }
+                out.write("# matches " + expected + "\n");
+            } else {
+                checker.check(text, out);
+            }
+            out.write("# " + checker.summary() + "\n");
+            out.flush();
+        }
+    }
+}
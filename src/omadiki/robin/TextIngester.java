@@ -0,0 +1,301 @@
+package omadiki.robin;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts how often every dictionary word occurs in a text file, using several threads,
+ * and adds the counts to the importance of the words in a {@link CompressedTrie}.
+ * <p>
+ * The words of the text are produced by the {@link Tokenizer}. The file is cut
+ * into byte ranges that start and end on non-letter bytes, so no word is ever split
+ * between two ranges. Each range is tokenized by a fork/join task that only reads the
+ * trie and keeps its counts locally; the counts are merged when the tasks join and
+ * are added to the trie at the very end, so the result is the same as searching every
+ * word of the text one after the other. If an {@link ImportanceLog} is attached to the
+ * trie, it then gets one record per distinct word, with its final importance.
+ * </p>
+ */
+public final class TextIngester {
+    /** Ranges larger than this are split in two. */
+    private static final long RANGE_SIZE = 8 << 20;
+
+    /**
+     * Not meant to be instantiated.
+     */
+    private TextIngester() {
+    }
+
+    /**
+     * Counts the words of a text file and adds the counts to the trie.
+     *
+     * @param trie    The trie whose importance counters are increased. It must not be
+     *                modified by other threads while this runs.
+     * @param file    The text file.
+     * @param threads The number of worker threads. With one, the words are searched
+     *                directly on the calling thread.
+     * @return The number of words (letter runs) found in the text, including the
+     * ones that are not in the trie.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long ingest(CompressedTrie trie, Path file, int threads) throws IOException {
+        return ingest(trie, file, threads, null);
+    }
+
+    /**
+     * Counts the words of a text file, adds the counts to the trie and, if asked to,
+     * also collects the words that are not in the trie.
+     *
+     * @param trie    The trie whose importance counters are increased. It must not be
+     *                modified by other threads while this runs.
+     * @param file    The text file.
+     * @param threads The number of worker threads.
+     * @param misses  Receives every unknown word with its occurrences and first position;
+     *                {@code null} to ignore them.
+     * @return The number of words (letter runs) found in the text.
+     * @throws IOException If the file cannot be read.
+     */
+    static long ingest(CompressedTrie trie, Path file, int threads, Map<String, SpellChecker.Miss> misses) throws IOException {
+        if (threads <= 1) {
+            if (misses == null) {
+                return new Tokenizer().tokenize(file, trie::search);
+            }
+            Tokenizer tokenizer = new Tokenizer();
+            return tokenizer.tokenize(file, word -> {
+                if (!trie.search(word)) {
+                    SpellChecker.Miss.record(misses, word, tokenizer.wordStart());
+                }
+            });
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            Counts counts;
+            try {
+                counts = pool.invoke(new RangeTask(trie, channel, 0, size, misses != null, trie.log != null));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                pool.shutdown();
+            }
+
+            for (Map.Entry<CompressedTrie.CompressedTrieNode, int[]> e : counts.words.entrySet()) {
+                e.getKey().importance += e.getValue()[0];
+            }
+            trie.refreshAggregates();
+            if (counts.spellings != null) { // The workers never search, so the log has seen nothing yet
+                for (Map.Entry<CompressedTrie.CompressedTrieNode, String> e : counts.spellings.entrySet()) {
+                    trie.log.record(e.getValue(), 0, e.getValue().length(), e.getKey().importance);
+                }
+            }
+            if (misses != null) {
+                SpellChecker.Miss.mergeInto(misses, counts.misses);
+            }
+            return counts.tokens;
+        }
+    }
+
+    /**
+     * Word counts of one part of the text.
+     */
+    private static final class Counts {
+        /** Occurrences of every dictionary word, keyed by the node that ends it. */
+        final IdentityHashMap<CompressedTrie.CompressedTrieNode, int[]> words = new IdentityHashMap<>();
+        /** The unknown words of the part; {@code null} when they are not collected. */
+        Map<String, SpellChecker.Miss> misses;
+        /** The word of every counted node, for the importance log; {@code null} without one. */
+        IdentityHashMap<CompressedTrie.CompressedTrieNode, String> spellings;
+        /** Number of letter runs seen, including the unknown ones. */
+        long tokens;
+
+        /**
+         * Adds the counts of another part into this one.
+         *
+         * @param other The counts to add.
+         * @return This object.
+         */
+        Counts merge(Counts other) {
+            if (other.words.size() > words.size()) {
+                return other.merge(this);
+            }
+            for (Map.Entry<CompressedTrie.CompressedTrieNode, int[]> e : other.words.entrySet()) {
+                int[] c = words.get(e.getKey());
+                if (c == null) {
+                    words.put(e.getKey(), e.getValue());
+                } else {
+                    c[0] += e.getValue()[0];
+                }
+            }
+            if (misses != null) {
+                SpellChecker.Miss.mergeInto(misses, other.misses);
+            }
+            if (spellings != null) {
+                spellings.putAll(other.spellings);
+            }
+            tokens += other.tokens;
+            return this;
+        }
+    }
+
+    /**
+     * Counts the words in a byte range, splitting it while it is large.
+     */
+    private static final class RangeTask extends RecursiveTask<Counts> {
+        private static final long serialVersionUID = 1L;
+
+        /** The trie to look the words up in. */
+        private final CompressedTrie trie;
+        /** The text file. */
+        private final FileChannel channel;
+        /** The first byte of the range; it is not inside a word. */
+        private final long from;
+        /** The end (exclusive) of the range; no word goes past it. */
+        private final long to;
+        /** Whether the unknown words are collected. */
+        private final boolean misses;
+        /** Whether the words of the counted nodes are kept, for the importance log. */
+        private final boolean spellings;
+
+        /**
+         * @param trie      The trie to look the words up in.
+         * @param channel   The text file.
+         * @param from      The first byte of the range.
+         * @param to        The end (exclusive) of the range.
+         * @param misses    Whether the unknown words are collected.
+         * @param spellings Whether the words of the counted nodes are kept.
+         */
+        RangeTask(CompressedTrie trie, FileChannel channel, long from, long to, boolean misses, boolean spellings) {
+            this.trie = trie;
+            this.channel = channel;
+            this.from = from;
+            this.to = to;
+            this.misses = misses;
+            this.spellings = spellings;
+        }
+
+        @Override
+        protected Counts compute() {
+            try {
+                if (to - from > RANGE_SIZE) {
+                    long middle = wordBoundary(channel, from + (to - from) / 2, to);
+                    if (middle > from && middle < to) {
+                        RangeTask left = new RangeTask(trie, channel, from, middle, misses, spellings);
+                        RangeTask right = new RangeTask(trie, channel, middle, to, misses, spellings);
+                        left.fork();
+                        Counts r = right.compute();
+                        return left.join().merge(r);
+                    }
+                }
+                return count(trie, channel, from, to, misses, spellings);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Unwrapped by ingest
+            }
+        }
+    }
+
+    /**
+     * Moves a position forward to the first byte that is not an ASCII letter.
+     *
+     * @param channel  The text file.
+     * @param position The position to start from.
+     * @param limit    The position not to go past.
+     * @return The boundary.
+     * @throws IOException If the file cannot be read.
+     */
+    private static long wordBoundary(FileChannel channel, long position, long limit) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        while (position < limit) {
+            buffer.clear();
+            int n = channel.read(buffer, position);
+            if (n <= 0) return limit;
+            for (int i = 0; i < n; i++) {
+                if (!isLetter(buffer.get(i))) return position + i;
+            }
+            position += n;
+        }
+        return limit;
+    }
+
+    /**
+     * @param b A byte of the text.
+     * @return {@code true} if it is an ASCII letter.
+     */
+    private static boolean isLetter(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z');
+    }
+
+    /**
+     * Tokenizes one range of the text and counts the dictionary words in it.
+     *
+     * @param trie      The trie to look the words up in.
+     * @param channel   The text file.
+     * @param from      The first byte of the range.
+     * @param to        The end (exclusive) of the range.
+     * @param misses    Whether the unknown words are collected.
+     * @param spellings Whether the words of the counted nodes are kept.
+     * @return The counts of the range.
+     * @throws IOException If the file cannot be read.
+     */
+    private static Counts count(CompressedTrie trie, FileChannel channel, long from, long to, boolean misses,
+                                boolean spellings) throws IOException {
+        Counts counts = new Counts();
+        if (misses) {
+            counts.misses = new HashMap<>();
+        }
+        if (spellings) {
+            counts.spellings = new IdentityHashMap<>();
+        }
+        Tokenizer tokenizer = new Tokenizer();
+        counts.tokens = tokenizer.tokenize(channel, from, to, word -> {
+            CompressedTrie.CompressedTrieNode node = trie.findWord(word);
+            if (node == null) {
+                if (misses) {
+                    SpellChecker.Miss.record(counts.misses, word, tokenizer.wordStart());
+                }
+            } else {
+                int[] c = counts.words.get(node);
+                if (c == null) {
+                    counts.words.put(node, new int[]{1});
+                    if (spellings) {
+                        counts.spellings.put(node, word.toString());
+                    }
+                } else {
+                    c[0]++;
+                }
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Prints the ingestion throughput for every thread count from 1 up to the number
+     * of available processors (or the third argument).
+     *
+     * @param args The dictionary file, the text file and, optionally, the maximum thread count.
+     * @throws IOException If a file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        Path text = Path.of(args[1]);
+        int max = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        double megabytes = Files.size(text) / (1024.0 * 1024.0);
+
+        System.out.println("threads\tMB/s\ttokens/s");
+        for (int threads = 1; threads <= max; threads++) {
+            CompressedTrie trie = BulkLoader.load(Path.of(args[0]));
+            long start = System.nanoTime();
+            long tokens = ingest(trie, text, threads);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d\t%.1f\t%.0f%n", threads, megabytes / seconds, tokens / seconds);
+        }
+    }
+}
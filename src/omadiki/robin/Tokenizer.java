@@ -0,0 +1,138 @@
+package omadiki.robin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Scanner;
+import java.util.function.Consumer;
+
+/**
+ * Streaming tokenizer that splits a text file into lowercase words without creating
+ * a {@code String} per word.
+ * <p>
+ * A word is a maximal run of ASCII letters. This is exactly what the old text parser
+ * produced with {@code Scanner.next()}, {@code split("[^A-Za-z]+")} and
+ * {@code toLowerCase()}: whitespace and every other non-letter byte separate words
+ * in the same way, and the bytes of multi-byte UTF-8 characters are never letters.
+ * The file is read through a large direct {@link ByteBuffer}, letters are lowercased
+ * as they are copied, and each word is handed to the caller as a reused
+ * {@link CharSequence} that is only valid during the call.
+ * </p>
+ */
+public final class Tokenizer {
+    /** Size of the read buffer. */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /** The read buffer. */
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    /** The letters of the current word. */
+    private char[] word = new char[64];
+    /** The view passed to the consumer. */
+    private final CharSlice slice = new CharSlice();
+    /** The position in the file of the first letter of the word passed to the consumer. */
+    private long start;
+
+    /**
+     * Tokenizes a whole file.
+     *
+     * @param file     The text file.
+     * @param consumer Called once per word, in order. The argument must not be kept.
+     * @return The number of words.
+     * @throws IOException If the file cannot be read.
+     */
+    public long tokenize(Path file, Consumer<CharSequence> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return tokenize(channel, 0, channel.size(), consumer);
+        }
+    }
+
+    /**
+     * Tokenizes the byte range {@code [from, to)} of a file. The range should start
+     * and end outside of words, otherwise the words crossing its ends are cut.
+     *
+     * @param channel  The text file.
+     * @param from     The first byte to read.
+     * @param to       The end (exclusive) of the range.
+     * @param consumer Called once per word, in order. The argument must not be kept.
+     * @return The number of words.
+     * @throws IOException If the file cannot be read.
+     */
+    public long tokenize(FileChannel channel, long from, long to, Consumer<CharSequence> consumer) throws IOException {
+        long tokens = 0;
+        int length = 0;
+        long position = from;
+
+        while (position < to) {
+            bytes.clear();
+            bytes.limit((int) Math.min(BUFFER_SIZE, to - position));
+            int n = channel.read(bytes, position);
+            if (n <= 0) break;
+
+            for (int i = 0; i < n; i++) {
+                byte b = bytes.get(i);
+                int lower = b | 0x20; // Only 'A'..'Z' and 'a'..'z' end up in 'a'..'z'; bytes >= 0x80 stay negative
+                if (lower >= 'a' && lower <= 'z') {
+                    if (length == word.length) {
+                        word = Arrays.copyOf(word, length * 2);
+                    }
+                    word[length++] = (char) lower;
+                } else if (length > 0) {
+                    start = position + i - length;
+                    consumer.accept(slice.wrap(word, 0, length));
+                    tokens++;
+                    length = 0;
+                }
+            }
+            position += n;
+        }
+
+        if (length > 0) {
+            start = position - length;
+            consumer.accept(slice.wrap(word, 0, length));
+            tokens++;
+        }
+        slice.clear();
+        return tokens;
+    }
+
+    /**
+     * @return The position in the file of the first byte of the word being passed to
+     * the consumer; only meaningful during the call.
+     */
+    public long wordStart() {
+        return start;
+    }
+
+    /**
+     * Compares the tokens per second of {@code Scanner} + {@code split} with this tokenizer.
+     *
+     * @param args The text file.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void main(String[] args) throws IOException {
+        Path text = Path.of(args[0]);
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            long scanned = 0;
+            try (Scanner sc = new Scanner(new File(args[0]), "UTF-8")) {
+                while (sc.hasNext()) {
+                    for (String w : sc.next().split("[^A-Za-z]+")) {
+                        if (!w.toLowerCase().isEmpty()) scanned++;
+                    }
+                }
+            }
+            double scanner = (System.nanoTime() - start) / 1e9;
+
+            start = System.nanoTime();
+            long tokens = new Tokenizer().tokenize(text, w -> { });
+            double tokenizer = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("Scanner: %d tokens, %.0f tokens/s; Tokenizer: %d tokens, %.0f tokens/s%n",
+                    scanned, scanned / scanner, tokens, tokens / tokenizer);
+        }
+    }
+}